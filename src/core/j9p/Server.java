@@ -37,6 +37,10 @@ package j9p;
 import java.net.ServerSocket;
 
 import j9p.auth.Authenticator;
+import j9p.ns.handlers.BlockCache;
+import j9p.ns.handlers.MemoryFile;
+import j9p.ns.handlers.ScheduledEngine;
+import j9p.ns.handlers.SpillStore;
 import j9p.server.NamespaceManager;
 import j9p.server.ServerSessionHandler;
 import j9p.util.Args;
@@ -113,6 +117,53 @@ public class Server {
 		}
 	}
 	
+	//=================================================================
+	/**
+	 * <p>Watch the namespace configuration file and reload the
+	 * namespace definitions if the file has changed. While a file
+	 * with the name of the configuration file and the extension
+	 * ".pause" exists, the engines of the namespaces are suspended
+	 * (e.g. during maintenance of backend services).</p>
+	 * @param mgr NamespaceManager - namespace manager of server
+	 * @param fname String - name of namespace configuration file
+	 * @param interval int - check interval (in seconds)
+	 */
+	protected static void watchConfig (final NamespaceManager mgr, final String fname, final int interval) {
+		Thread watcher = new Thread () {
+			public void run () {
+				java.io.File f = new java.io.File (fname);
+				java.io.File pause = new java.io.File (fname + ".pause");
+				long lastMod = f.lastModified();
+				boolean paused = false;
+				while (true) {
+					try {
+						sleep (interval * 1000L);
+					} catch (InterruptedException e) {
+						return;
+					}
+					// reload changed configuration.
+					long mod = f.lastModified();
+					if (mod != lastMod) {
+						lastMod = mod;
+						if (!mgr.reload())
+							System.err.println ("[StyxServer] Reload failed - keeping active namespaces.");
+					}
+					// suspend or resume engines.
+					if (pause.exists() != paused) {
+						paused = !paused;
+						if (paused)
+							mgr.suspendEngines();
+						else
+							mgr.resumeEngines();
+						System.out.println ("[StyxServer] Engines " + (paused ? "suspended." : "resumed."));
+					}
+				}
+			}
+		};
+		watcher.setDaemon (true);
+		watcher.start();
+	}
+	
 	//=================================================================
 	/**
 	 * 
@@ -129,22 +180,32 @@ public class Server {
 		System.out.flush();
 		
 		// parse commandline options
-		Args args = new Args (argv, "p:s:a:");
+		Args args = new Args (argv, "p:s:a:r:c:m:l:e:");
 		int port = args.getWordOpt ("-p", 6666);
 		int maxSessions = args.getWordOpt ("-s", 10);
 		String authConfig = args.getStringOpt ("-a", null);
 		boolean auth = (authConfig != null);
+		int reload = args.getWordOpt ("-r", 0);
+		int cacheSize = args.getWordOpt ("-c", 64);
+		int memBudget = args.getWordOpt ("-m", 0);
+		int createLimit = args.getWordOpt ("-l", 16);
+		int engThreads = args.getWordOpt ("-e", 0);
 		
 		int argc = args.getNumArgs();
 		if (argc != 1) {
 			System.err.println ("Only one positional argument (namespace config) allowed!");
-			System.err.println ("Usage: StyxServer [-p <port>] [-s <maxSessions>] [-a <auth config>] <namespace config>");
-			System.err.println ("Defaults: Port = 6666, maxSessions = 10");
+			System.err.println ("Usage: StyxServer [-p <port>] [-s <maxSessions>] [-a <auth config>] [-r <reload check interval>] [-c <block cache MB>] [-m <memory file budget MB>] [-l <created file limit MB>] [-e <engine threads>] <namespace config>");
+			System.err.println ("Defaults: Port = 6666, maxSessions = 10, block cache = 64MB, memory file budget = unlimited, created file limit = 16MB, engine threads = number of CPUs");
 			System.err.flush();
 			return;
 		}
 		
 		System.out.println ("Using port " + port + " for max. " + maxSessions + " concurrent sessions.");
+		BlockCache.setCapacity (cacheSize * 1024L * 1024L);
+		SpillStore.setBudget (memBudget * 1024L * 1024L);
+		MemoryFile.setCreateLimit (createLimit * 1024L * 1024L);
+		if (engThreads > 0)
+			ScheduledEngine.setThreads (engThreads);
 		
 		// read namespace configuration
 		String nsConfig = args.getStringArg (0, null);
@@ -156,6 +217,11 @@ public class Server {
 			System.err.flush();
 			return;
 		}
+		// watch for changes of the configuration.
+		if (reload > 0) {
+			System.out.println ("Checking namespace configuration for changes every " + reload + " seconds.");
+			watchConfig (mgr, nsConfig, reload);
+		}
 
 		// Read authentication data
 		if (auth) {
@@ -35,6 +35,7 @@ package j9p.auth;
 //import external declarations.
 
 import java.security.NoSuchAlgorithmException;
+import java.util.BitSet;
 import java.util.Vector;
 import j9p.crypto.SecureChannel;
 
@@ -56,6 +57,8 @@ public class Credential {
 	protected boolean			authenticated = false;	// authenticated credential
 	protected String			userId = "*";			// user identifier
 	protected Vector<String>	groupIds = null;		// list of associated groups
+	protected int				uid = -1;				// identifier of user
+	protected BitSet			groupSet = null;		// identifiers of groups
 	protected byte[]			sharedSecret = null;	// shared secret
 	protected String			algorithms = null;		// channel algorithms
 	protected String			aname = null;			// name of attached namespace
@@ -68,7 +71,9 @@ public class Credential {
 	public Credential (String user) {
 		if (user != null)
 			userId = user;
+		uid = Identities.getId (userId);
 		groupIds = new Vector<String>();
+		groupSet = new BitSet();
 		sharedSecret = null;
 		authenticated = false;
 	}
@@ -92,6 +97,16 @@ public class Credential {
 		return userId;
 	}
 	
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get identifier of credential holder.</p> 
+	 * @return int - user identifier
+	 * @see Identities
+	 */
+	public int getUid () {
+		return uid;
+	}
+	
 	//=================================================================
 	/**
 	 * <p>Check if credential holder is member of a specific group.</p>
@@ -99,11 +114,24 @@ public class Credential {
 	 * @return boolean - owner is member in group
 	 */
 	public boolean isMember (String group) {
-		for (String gid : groupIds) {
-			if (gid.equals(group))
-				return true;
-		}
-		return false;
+		if (group == null)
+			return false;
+		int gid = Identities.getId (group);
+		// unregistered groups are compared by name.
+		if (gid == Identities.OTHER)
+			return groupIds.contains (group);
+		return groupSet.get (gid);
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Check if credential holder is member of a specific group
+	 * (registered groups only).</p>
+	 * @param gid int - identifier of group to be tested
+	 * @return boolean - owner is member in group
+	 * @see Identities
+	 */
+	public boolean isMember (int gid) {
+		return gid > Identities.OTHER && groupSet.get (gid);
 	}
 	
 	//=================================================================
@@ -129,6 +157,7 @@ public class Credential {
 	public boolean setUser (String user) {
 		if (user != null && userId.equals ("*")) {
 			userId = user;
+			uid = Identities.getId (user);
 			return true;
 		}
 		return false;
@@ -144,6 +173,9 @@ public class Credential {
 		if (groupIds.contains (gid))
 			return false;
 		groupIds.add (gid);
+		int id = Identities.getId (gid);
+		if (id > Identities.OTHER)
+			groupSet.set (id);
 		return true;
 	}
 	
@@ -199,11 +231,13 @@ public class Credential {
 	protected void overwrite (Credential cr) {
 		authenticated = cr.authenticated;
 		userId = new String (cr.userId);
+		uid = cr.uid;
 		sharedSecret = cr.sharedSecret.clone();
 		algorithms = (cr.algorithms == null ? null : new String (cr.algorithms));
 		aname = (cr.aname == null ? null : new String (cr.aname));
 		groupIds = new Vector<String>();
 		for (String gid : cr.groupIds)
 			groupIds.add (gid);
+		groupSet = (BitSet) cr.groupSet.clone();
 	}
 }
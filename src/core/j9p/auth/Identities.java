@@ -0,0 +1,124 @@
+
+//******************************************************************
+//*   PGMID.        INTERNED USER AND GROUP IDENTIFIERS.           *
+//*   AUTHOR.       BERND R. FIX   >Y<                             *
+//*   DATE WRITTEN. 26/10/18.                                      *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.      *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE    *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.       *
+//******************************************************************
+//*                                                                *
+//*  StyxLib: Java-based Styx server framework                     *
+//*                                                                *
+//*  Copyright (C) 2009-2012, Bernd R. Fix                         *
+//*                                                                *
+//*  This program is free software; you can redistribute it and/or *
+//*  modify it under the terms of the GNU Lesser General Public    *
+//*  License (LGPL) as published by the Free Software Foundation;  *
+//*  either version 3 of the License, or (at your option) any      *
+//*  later version.                                                *
+//*                                                                *
+//*  This program is distributed in the hope that it will be use-  *
+//*  ful, but WITHOUT ANY WARRANTY; without even the implied       *
+//*  warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR       *
+//*  PURPOSE. See the GNU General Public License for more details. *
+//*                                                                *
+//*  You should have received a copy of the GNU General Public     *
+//*  Licenses along with this program; if not, see                 *
+//*  <http://www.gnu.org/licenses/>.                               *
+//*                                                                *
+//******************************************************************
+
+package j9p.auth;
+
+///////////////////////////////////////////////////////////////////////////////
+//import external declarations.
+
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+///////////////////////////////////////////////////////////////////////////////
+/**
+ * <p><b>Identities</b> maps user and group names to small integer
+ * identifiers. Credentials and permissions store the identifiers of
+ * names, so access checks compare integers instead of strings. Users
+ * and groups share the same name space (a user is usually a member of
+ * a group with the same name).</p>
+ * <p>Identifiers are only assigned to names that are registered from
+ * the configuration and are never released; all other names (e.g. user
+ * names sent by clients) share the identifier <i>OTHER</i>, so their
+ * names must be compared to tell them apart.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public class Identities {
+
+	//=================================================================
+	/**
+	 * <p>Identifier of all names that are not registered.</p>
+	 */
+	public static final int OTHER = 0;
+
+	//=================================================================
+	/*
+	 * Attributes:
+	 */
+	private static ConcurrentHashMap<String,Integer> ids = new ConcurrentHashMap<String,Integer>();
+	private static Vector<String> names = new Vector<String>();
+	static {
+		// reserve identifier of unregistered names.
+		names.add (null);
+	}
+
+	//=================================================================
+	/**
+	 * <p>Get identifier for a user or group name.</p>
+	 * @param name String - user or group name
+	 * @return int - identifier (OTHER for unregistered names, -1 for
+	 * null names)
+	 */
+	public static int getId (String name) {
+		if (name == null)
+			return -1;
+		Integer id = ids.get (name);
+		return (id != null ? id : OTHER);
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Register a user or group name from the configuration. A new
+	 * identifier is assigned if the name is not known yet.</p>
+	 * @param name String - user or group name
+	 * @return int - identifier (or -1 for null names)
+	 */
+	public static int register (String name) {
+		if (name == null)
+			return -1;
+		Integer id = ids.get (name);
+		if (id != null)
+			return id;
+		synchronized (names) {
+			// check again (concurrent assignment)
+			id = ids.get (name);
+			if (id == null) {
+				id = names.size();
+				names.add (name);
+				ids.put (name, id);
+			}
+		}
+		return id;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get name of user or group for an identifier.</p>
+	 * @param id int - identifier
+	 * @return String - user or group name (or null)
+	 */
+	public static String getName (int id) {
+		if (id <= OTHER || id >= names.size())
+			return null;
+		return names.elementAt (id);
+	}
+}
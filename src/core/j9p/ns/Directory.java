@@ -48,6 +48,42 @@ import j9p.auth.Credential;
  */
 public abstract class Directory extends Entry {
 	
+	//=================================================================
+	/*
+	 * Constants: Types of namespace change events.
+	 */
+	public static final int EV_CREATE	= 1;	// entry added
+	public static final int EV_REMOVE	= 2;	// entry removed
+	public static final int EV_MODIFY	= 3;	// entry modified
+	
+	//=================================================================
+	/**
+	 * <p>Inner interface for watchers of namespace changes.</p>
+	 * <p>A watcher registered with a directory is notified about
+	 * changes of entries in the directory and in all directories
+	 * below it. Notifications are delivered synchronously by the
+	 * thread that changed the namespace, so implementations must
+	 * return quickly.</p>
+	 */
+	public static interface Watcher {
+		
+		//-------------------------------------------------------------
+		/**
+		 * <p>Namespace change event.</p>
+		 * @param type int - type of event (EV_???)
+		 * @param e Entry - changed entry
+		 * @param dir Directory - watched directory
+		 */
+		void changed (int type, Entry e, Directory dir);
+	}
+	
+	//=================================================================
+	/*
+	 *	Attributes: 
+	 */
+	private volatile Namespace ns = null;		// namespace of directory
+	private volatile Watcher[] watchers = null;	// registered watchers
+	
 	//=================================================================
 	/**
 	 * <p>Create a new directory of given name.</p> 
@@ -68,6 +104,80 @@ public abstract class Directory extends Entry {
 		stat.flags = Entry.DMDIR;
 	}
 	
+	//=================================================================
+	/**
+	 * <p>Get the namespace this directory is part of.</p>
+	 * @return Namespace - namespace of directory (or null)
+	 */
+	public Namespace getNamespace () {
+		return ns;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Bind directory to a namespace.</p>
+	 * @param ns Namespace - namespace of directory
+	 */
+	void setNamespace (Namespace ns) {
+		this.ns = ns;
+	}
+	
+	//=================================================================
+	//	Namespace change notifications.
+	//=================================================================
+	/**
+	 * <p>Register a watcher for changes in this directory (and
+	 * all directories below it).</p>
+	 * @param w Watcher - watcher to be registered
+	 */
+	public synchronized void addWatcher (Watcher w) {
+		Watcher[] old = watchers;
+		int count = (old == null ? 0 : old.length);
+		Watcher[] res = new Watcher [count+1];
+		if (old != null)
+			System.arraycopy (old, 0, res, 0, count);
+		res[count] = w;
+		watchers = res;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Unregister a watcher.</p>
+	 * @param w Watcher - watcher to be removed
+	 */
+	public synchronized void removeWatcher (Watcher w) {
+		Watcher[] old = watchers;
+		if (old == null)
+			return;
+		int pos = old.length-1;
+		while (pos >= 0 && old[pos] != w)
+			pos--;
+		if (pos < 0)
+			return;
+		if (old.length == 1) {
+			watchers = null;
+			return;
+		}
+		Watcher[] res = new Watcher [old.length-1];
+		System.arraycopy (old, 0, res, 0, pos);
+		System.arraycopy (old, pos+1, res, pos, res.length-pos);
+		watchers = res;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Notify watchers of this directory and of all parent
+	 * directories about a change of an entry.</p>
+	 * @param type int - type of event (EV_???)
+	 * @param e Entry - changed entry
+	 */
+	protected void fireEvent (int type, Entry e) {
+		for (Directory dir = this; dir != null; dir = dir.parent) {
+			Watcher[] list = dir.watchers;
+			if (list == null)
+				continue;
+			for (Watcher w : list)
+				w.changed (type, e, dir);
+		}
+	}
+	
 	//=================================================================
 	//	Manage list of contained entries.
 	//=================================================================
@@ -108,7 +218,43 @@ public abstract class Directory extends Entry {
 	 * @return boolean - remove successful?
 	 */
 	public abstract boolean remove (Entry e);
-	
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Remove an entry that was looked up in this directory (on
+	 * behalf of a client). Directories that show entries of other
+	 * directories (overlays) override this method.</p>
+	 * @param e Entry - entry to be removed
+	 * @return boolean - remove successful?
+	 */
+	public boolean unlink (Entry e) {
+		return e.remove();
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Check if the entries of the directory are available.
+	 * Directories that build their entries on demand return
+	 * false until they are accessed for the first time.</p>
+	 * @return boolean - entries available?
+	 */
+	public boolean isPopulated () {
+		return true;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Check if a contained entry can be renamed. Directories
+	 * that index their entries by name update the index.</p>
+	 * @param e Entry - entry to be renamed
+	 * @param newName String - new name of entry
+	 * @return boolean - rename allowed?
+	 */
+	protected boolean rename (Entry e, String newName) {
+		// names must be unique in a directory.
+		return getEntryByName (newName) == null;
+	}
+
 	//=================================================================
 	//	abstract methods for directory operations
 	//=================================================================
@@ -34,8 +34,10 @@ package j9p.ns;
 ///////////////////////////////////////////////////////////////////////////////
 //import external declarations.
 
+import java.io.IOException;
 import java.util.Date;
 import java.util.Hashtable;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import j9p.ns.handlers.Process;
 import j9p.auth.Credential;
 
@@ -69,6 +71,12 @@ public abstract class Entry {
 	 * <p>Inner class representing the entry (file) attributes. This
 	 * is independent from any attribute representations used in
 	 * specific implementations of the Styx protocol (common enclosure).</p>
+	 * <p>Attributes assigned to an entry are never modified: changes
+	 * are applied to a copy that replaces the attributes of the entry
+	 * as a whole, so readers always see a consistent snapshot.</p>
+	 * <p>Permissions and device names are shared between entries
+	 * (see <i>Permissions.share()</i>), so the attributes of an entry
+	 * only hold references to them.</p>
 	 */
 	public static class Attributes {
 		
@@ -78,7 +86,26 @@ public abstract class Entry {
 		public long			qidPath;		// internal unique entry id
 		public int			atime;			// time of last access
 		public int			mtime;			// time of last modification
+		public int			version;		// modification counter
 		public String		device;			// mount device
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>Return a copy of the attributes.</p>
+		 * @return Attributes - copied attributes
+		 */
+		public Attributes copy () {
+			Attributes attr = new Attributes();
+			attr.name = name;
+			attr.perm = perm;
+			attr.flags = flags;
+			attr.qidPath = qidPath;
+			attr.atime = atime;
+			attr.mtime = mtime;
+			attr.version = version;
+			attr.device = device;
+			return attr;
+		}
 	}
 	
 	//=================================================================
@@ -138,9 +165,21 @@ public abstract class Entry {
 			
 			// check attributes
 			boolean valid = true; // @@@ checkAttributes();
+			// check for renamed entry
+			if (valid && e.parent != null && attr.name != null && !attr.name.equals (e.stat.name))
+				valid = e.parent.rename (e, attr.name);
 			if (valid) {
 				// set new attributes.
-				e.stat = attr;
+				attr.perm = Permissions.share (attr.perm);
+				if (attr.device != null)
+					attr.device = attr.device.intern();
+				synchronized (e) {
+					attr.version = e.stat.version + 1;
+					e.stat = attr;
+				}
+				// notify watchers
+				if (e.parent != null)
+					e.parent.fireEvent (Directory.EV_MODIFY, e);
 				return true;
 			}
 			return false;
@@ -175,6 +214,7 @@ public abstract class Entry {
 		public long			lastWriteOfs = -1;		// last offset for write
 		public int			lastWriteNum = 0;		// number of bytes in last write
 		public Credential	userCredential = null;	// user credentials
+		public volatile IOException error = null;	// deferred I/O error (not yet reported)
 		
 		//-------------------------------------------------------------
 		/**
@@ -188,9 +228,22 @@ public abstract class Entry {
 	/*
 	 *	Attributes: 
 	 */
-	protected Directory		parent = null;		// reference to parent (directory)
-	protected Attributes	stat = null;		// reference to file attributes
-	protected int			inUse = 0;			// number of accessors
+	protected volatile Directory	parent = null;		// reference to parent (directory)
+	protected volatile Attributes	stat = null;		// reference to file attributes
+	protected volatile int			inUse = 0;			// number of accessors
+	protected volatile int			refs = 0;			// number of referencing fids
+	
+	/**
+	 * <p>Atomic access to the usage counter (saves an extra
+	 * counter object per entry).</p>
+	 */
+	private static final AtomicIntegerFieldUpdater<Entry> USAGE =
+		AtomicIntegerFieldUpdater.newUpdater (Entry.class, "inUse");
+	/**
+	 * <p>Atomic access to the reference counter.</p>
+	 */
+	private static final AtomicIntegerFieldUpdater<Entry> REFS =
+		AtomicIntegerFieldUpdater.newUpdater (Entry.class, "refs");
 	
 	//=================================================================
 	/**
@@ -213,7 +266,6 @@ public abstract class Entry {
 		parent = null;
 		stat = new Attributes();
 		stat.name = null;
-		inUse = 0;
 	}
 	//-----------------------------------------------------------------
 	/**
@@ -222,15 +274,17 @@ public abstract class Entry {
 	 * @param perm Permissions - access permissions for file
 	 * @param device String - mount handler
 	 */
-	public void init (String name, Permissions perm, String device) {
+	public synchronized void init (String name, Permissions perm, String device) {
 		// can only initialize un-initialized entries.
 		if (stat.name != null)
 			return;
 		// allocate and set attributes
-		stat.name = name;
-		stat.perm = perm;
-		stat.mtime = stat.atime = getEpoch();
-		stat.device = (device == null ? DEFAULT_DEVICE : device);
+		Attributes attr = stat.copy();
+		attr.name = name;
+		attr.perm = Permissions.share (perm);
+		attr.mtime = attr.atime = getEpoch();
+		attr.device = (device == null ? DEFAULT_DEVICE : device.intern());
+		stat = attr;
 	}
 
 	//=================================================================
@@ -240,21 +294,48 @@ public abstract class Entry {
 	 * of named parameters with string values.</p>
 	 * <p>This method is overwitten by derived classes that
 	 * require one or more handler concurrent threads.</p> 
+	 * <p>A returned process is started by the namespace manager
+	 * when the namespace is activated.</p>
 	 * @param p Hashtable<String,String> - parameter set
-	 * @return Process - started thread (or null)
+	 * @return Process - handler process to be started (or null)
 	 */
 	public Process startHandler (Hashtable<String,String> p) {
 		return null;
 	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Take over the running handler process of an unchanged entry
+	 * (same type and parameters) from a replaced configuration instead
+	 * of starting a new one.</p>
+	 * <p>This method is overwritten by derived classes that can
+	 * take over their handler process.</p>
+	 * @param proc Process - running handler process
+	 * @param p Hashtable<String,String> - parameter set
+	 * @return boolean - process taken over? (else a new one is started)
+	 */
+	public boolean adoptHandler (Process proc, Hashtable<String,String> p) {
+		return false;
+	}
 
 	//=================================================================
 	//	Synchronize timestamps of entry.
 	//=================================================================
 	/**
-	 * <p>Flag the entry as "modified".</p> 
+	 * <p>Flag the entry as "modified". Every modification
+	 * increments the version of the entry.</p> 
 	 */
 	public void setModified() {
-		stat.mtime = getEpoch();
+		synchronized (this) {
+			Attributes attr = stat.copy();
+			attr.mtime = getEpoch();
+			attr.version++;
+			stat = attr;
+		}
+		// notify watchers (changes of directories are
+		// reported as create/remove events).
+		Directory dir = parent;
+		if (dir != null && !(this instanceof Directory))
+			dir.fireEvent (Directory.EV_MODIFY, this);
 	}
 	
 	//-----------------------------------------------------------------
@@ -262,7 +343,15 @@ public abstract class Entry {
 	 * <p>Flag the entry as "accessed".</p> 
 	 */
 	public void setAccessed() {
-		stat.atime = getEpoch();
+		int now = getEpoch();
+		// skip update within the same second.
+		if (stat.atime == now)
+			return;
+		synchronized (this) {
+			Attributes attr = stat.copy();
+			attr.atime = now;
+			stat = attr;
+		}
 	}
 	
 	//=================================================================
@@ -279,24 +368,24 @@ public abstract class Entry {
 	public Handle open (Credential cr, int mode) {
 		// allocate handle
 		Handle hdl = new Handle();
+		Attributes attr = stat;
 		
-		// check exclusive use.
-		if ((stat.flags & DMEXCL) != 0) {
-			if (inUse > 0) {
-				// can only be opened once.
-				hdl.rc = Handle.RC_IN_EXCLUSIVE_USE;
-				return hdl;
-			}
-		}
 		// check access permissions.
-		if (!stat.perm.canAccess (cr, mode, parent)) {
+		if (!attr.perm.canAccess (cr, mode, parent)) {
 			// no access granted.
 			hdl.rc = Handle.RC_NO_PERMISSION;
 			return hdl;
 		}
-		
-		// file "opened".
-		inUse++;
+		// check exclusive use.
+		if ((attr.flags & DMEXCL) != 0) {
+			if (!USAGE.compareAndSet (this, 0, 1)) {
+				// can only be opened once.
+				hdl.rc = Handle.RC_IN_EXCLUSIVE_USE;
+				return hdl;
+			}
+		} else
+			// file "opened".
+			USAGE.incrementAndGet (this);
 		hdl.rc = Handle.RC_OK;
 		hdl.forRead  = Permissions.withReadAccess (mode);
 		hdl.forWrite = Permissions.withWriteAccess (mode);
@@ -308,7 +397,7 @@ public abstract class Entry {
 	 * <p>Release file (close).</p> 
 	 */
 	public void release () {
-		inUse--;
+		USAGE.decrementAndGet (this);
 	}
 	//-----------------------------------------------------------------
 	/**
@@ -335,6 +424,16 @@ public abstract class Entry {
 	 */
 	public abstract int write (Handle hdl, byte[] data, long offset, int size);
 	
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Commit written data of an open file to stable storage.
+	 * Entries without persistent content have nothing to do.</p>
+	 * @param hdl Handle - handle to opened file
+	 * @return boolean - successful operation?
+	 */
+	public boolean sync (Handle hdl) {
+		return true;
+	}
 	//-----------------------------------------------------------------
 	/**
 	 * <p>Remove entry from namespace</p> 
@@ -373,6 +472,53 @@ public abstract class Entry {
 		return stat.perm.clone();
 	}
 	//-----------------------------------------------------------------
+	/**
+	 * <p>Get parent directory of entry.</p>
+	 * @return Directory - parent directory (or null)
+	 */
+	public Directory getParent () {
+		return parent;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get version of entry (number of modifications).</p>
+	 * @return int - entry version
+	 */
+	public int getVersion () {
+		return stat.version;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Check if the entry is currently opened.</p>
+	 * @return boolean - entry is in use?
+	 */
+	public boolean isInUse () {
+		return inUse > 0;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>A fid of a session references the entry.</p>
+	 */
+	public void addReference () {
+		REFS.incrementAndGet (this);
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>A fid of a session no longer references the entry.</p>
+	 */
+	public void dropReference () {
+		REFS.decrementAndGet (this);
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Check if the entry is referenced by a fid (walked to,
+	 * but not necessarily opened).</p>
+	 * @return boolean - entry is referenced?
+	 */
+	public boolean isReferenced () {
+		return refs > 0;
+	}
+	//-----------------------------------------------------------------
 	/**
 	 * <p>Get size of entry.</p>
 	 * @return long - entry size
@@ -388,24 +534,34 @@ public abstract class Entry {
 	 * @param id long - entry identifier
 	 * @return boolean - operation successful?
 	 */
-	public boolean setId (long id) {
+	public synchronized boolean setId (long id) {
 		if (stat.qidPath != 0)
 			return false;
-		stat.qidPath = id;
+		Attributes attr = stat.copy();
+		attr.qidPath = id;
+		stat = attr;
 		return true;
 	}
 	
 	//-----------------------------------------------------------------
 	/**
-	 * <p>Set parent reference for namespace entry.</p> 
+	 * <p>Set parent reference for namespace entry. If the parent
+	 * directory is already part of a namespace, the entry is
+	 * registered with that namespace.</p> 
 	 * @param d Directory - parent directory
 	 * @return boolean - successful operation?
 	 */
 	public boolean setParent (Directory d) {
-		// can be set only once
-		if (parent != null)
-			return false;
-		parent = d;
+		synchronized (this) {
+			// can be set only once
+			if (parent != null)
+				return false;
+			parent = d;
+		}
+		// register entry with namespace of parent.
+		Namespace ns = d.getNamespace();
+		if (ns != null)
+			ns.register (this);
 		return true;
 	}
 
@@ -416,10 +572,15 @@ public abstract class Entry {
 	 * @param gid String - group id
 	 * @param mode int - permission flags
 	 */
-	public void setPermissions (String uid, String gid, Integer mode) {
-		if (uid != null)  stat.perm.setOwner (uid);
-		if (gid != null)  stat.perm.setGroup (gid);
-		if (mode != null) stat.perm.setMode  (mode);
+	public synchronized void setPermissions (String uid, String gid, Integer mode) {
+		Attributes attr = stat.copy();
+		Permissions perm = attr.perm.clone();
+		if (uid != null)  perm.setOwner (uid);
+		if (gid != null)  perm.setGroup (gid);
+		if (mode != null) perm.setMode  (mode);
+		attr.perm = Permissions.share (perm);
+		attr.version++;
+		stat = attr;
 	}
 	
 	//-----------------------------------------------------------------
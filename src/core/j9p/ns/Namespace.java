@@ -31,6 +31,11 @@
 
 package j9p.ns;
 
+///////////////////////////////////////////////////////////////////////////////
+//import external declarations.
+
+import java.util.concurrent.atomic.AtomicLong;
+
 
 ///////////////////////////////////////////////////////////////////////////////
 /**
@@ -47,9 +52,10 @@ public class Namespace {
 	//	Attributes:
 	//=================================================================
 	/**
-	 * <p>Static counter for id generation.</p>
+	 * <p>Counter for id generation (per namespace; shared with
+	 * overlay namespaces).</p>
 	 */
-	private static long lastQidPath = 0x00BF010100000001L;
+	private final AtomicLong lastQidPath;
 	/**
 	 * <p>Reference to root directory.</p>
 	 */
@@ -61,10 +67,31 @@ public class Namespace {
 	 * @param root Directory - root directory of namespace
 	 */
 	public Namespace (Directory root) {
+		// allocate id generator
+		lastQidPath = new AtomicLong (0x00BF010100000001L);
+		// register root directory
+		this.root = root;
+		// initialize tree
+		register (root);
+	}
+	
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Instantiate a namespace that uses the id generator of
+	 * another namespace: a base namespace that shares entries
+	 * (subtrees) with this namespace or a namespace replaced by
+	 * a reload of the configuration. Identifiers are unique across
+	 * both namespaces.</p>
+	 * @param root Directory - root directory of namespace
+	 * @param base Namespace - base (or replaced) namespace
+	 */
+	public Namespace (Directory root, Namespace base) {
+		// share id generator
+		lastQidPath = base.lastQidPath;
 		// register root directory
 		this.root = root;
 		// initialize tree
-		init (root);
+		register (root);
 	}
 	
 	//=================================================================
@@ -78,23 +105,39 @@ public class Namespace {
 	
 	//=================================================================
 	/**
-	 * <p>Helper: initialize directory tree for use as Styx
-	 * namespace (recursive invocation on directory entries)</p>
-	 * @param dir Directory - directory to be initialized
+	 * <p>Register an entry (and all entries contained in it)
+	 * with the namespace: Entries without an identifier are
+	 * assigned a new unique identifier; directories are bound
+	 * to the namespace, so entries added to them later on are
+	 * registered automatically. Directories of other namespaces
+	 * (shared subtrees) are left untouched.</p>
+	 * @param e Entry - entry to be registered
 	 */
-	private void init (Directory dir) {
-		// initialize directory
-		dir.setId (++lastQidPath | Entry.DMDIR);
+	public void register (Entry e) {
+		if (e instanceof Directory) {
+			// initialize directory
+			Directory dir = (Directory) e;
+			Namespace owner = dir.getNamespace();
+			if (owner != null && owner != this)
+				// shared directory of another namespace
+				return;
+			dir.setNamespace (this);
+			if (dir.stat.qidPath == 0)
+				dir.setId (getNextId() | Entry.DMDIR);
 
-		// traverse tree and initialize qids
-		int count = dir.numEntries();
-		for (int n = 0; n < count; n++) {
-			Entry e = dir.getEntryAt (n);
-			if (e instanceof Directory)
-				init ((Directory) e);
-			else
-				e.setId (++lastQidPath);
+			// traverse tree and initialize qids (entries
+			// of lazy directories are registered on demand)
+			if (!dir.isPopulated())
+				return;
+			int count = dir.numEntries();
+			for (int n = 0; n < count; n++) {
+				Entry child = dir.getEntryAt (n);
+				if (child != null)
+					register (child);
+			}
 		}
+		else if (e.stat.qidPath == 0)
+			e.setId (getNextId());
 	}
 	
 	//=================================================================
@@ -103,6 +146,6 @@ public class Namespace {
 	 * @return long - entry identifier
 	 */
 	public long getNextId () {
-		return ++lastQidPath;
+		return lastQidPath.incrementAndGet();
 	}
 }
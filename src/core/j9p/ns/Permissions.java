@@ -34,13 +34,21 @@ package j9p.ns;
 ///////////////////////////////////////////////////////////////////////////////
 //import external declarations.
 
+import java.util.concurrent.ConcurrentHashMap;
 import j9p.auth.Credential;
+import j9p.auth.Identities;
 
 
 ///////////////////////////////////////////////////////////////////////////////
 /**
  * <p>A <b>Permissions</b> object describes the access permissions
  * for a namespace entry.</p>
+ * <p>Namespace entries reference shared instances (see <i>share()</i>):
+ * all entries with the same owner, group and mode use the same object.
+ * Shared instances can't be modified (setters throw an exception); a
+ * modified copy is created with <i>clone()</i>.</p>
+ * <p>Owner and group are compared by their identifiers; names that are
+ * not registered (see <i>Identities</i>) are compared by name.</p>
  * 
  * @author Bernd R. Fix   >Y<
  * @version 1.0
@@ -70,6 +78,10 @@ public class Permissions {
 	public static final int PERM_700	= PERM_600 | PERM_OX;
 	public static final int PERM_755	= PERM_700 | PERM_GR | PERM_GX
 												   | PERM_AR | PERM_AX;
+	/*
+	 * Permission masks (for "all") for access modes.
+	 */
+	private static final int[] MODE_MASK = { 4, 2, 6, 1 };
 	/*
 	 * Constants for access mode.
 	 */
@@ -80,6 +92,12 @@ public class Permissions {
 	public static final int OTRUNC	= 0x10;	// truncate file
 	public static final int OCLOSE	= 0x40;	// remove on close
 	
+	//=================================================================
+	/**
+	 * <p>Shared instances (keyed by owner, group and mode).</p>
+	 */
+	private static ConcurrentHashMap<Long,Permissions> shared = new ConcurrentHashMap<Long,Permissions>();
+	
 	//=================================================================
 	/*
 	 * Attributes:
@@ -87,6 +105,9 @@ public class Permissions {
 	private String	owner;		// file owner (user id)
 	private String	group;		// associated group (group id)
 	private int		perm;		// permission flags
+	private int		ownerId;	// identifier of owner
+	private int		groupId;	// identifier of group
+	private boolean	frozen = false;	// shared (immutable) instance?
 	
 	//=================================================================
 	/**
@@ -97,33 +118,60 @@ public class Permissions {
 	 * @param mode int - permission flags (PERM_??)
 	 */
 	public Permissions (String uid, String gid, int mode) {
-		owner = uid;
-		group = gid;
+		setOwner (uid);
+		setGroup (gid);
 		setMode (mode);
 	}
 	
+	//=================================================================
+	/**
+	 * <p>Get the shared instance for the given permissions. The
+	 * argument is not modified and not referenced afterwards.</p>
+	 * @param p Permissions - permissions (or null)
+	 * @return Permissions - shared (immutable) permissions
+	 */
+	public static Permissions share (Permissions p) {
+		if (p == null)
+			return null;
+		// identifiers are packed into the key (24 bits each);
+		// don't share permissions with out-of-range identifiers
+		// or unregistered names.
+		long uid = p.ownerId + 1;
+		long gid = p.groupId + 1;
+		if (uid > 0xFFFFFF || gid > 0xFFFFFF
+			|| p.ownerId == Identities.OTHER || p.groupId == Identities.OTHER)
+			return p.clone();
+		Long key = Long.valueOf ((uid << 36) | (gid << 12) | p.perm);
+		Permissions res = shared.get (key);
+		if (res == null) {
+			Permissions perm = p.clone();
+			perm.frozen = true;
+			res = shared.putIfAbsent (key, perm);
+			if (res == null)
+				res = perm;
+		}
+		return res;
+	}
+	
 	//=================================================================
 	/**
 	 * <p>Check if credential allows access to file. The mode parameter
 	 * specifies the access mode (read, write, delete, create).</p>
+	 * <p>User and group names are compared by their identifiers.</p>
 	 * @param cr Credential - authenticated user credential
 	 * @param mode int - access mode
+	 * @param parent Entry - parent directory (for OCLOSE)
 	 * @return boolean - operation allowed?
 	 */
 	public boolean canAccess (Credential cr, int mode, Entry parent) {
 		
 		// assemble permission mask for entry
-		int maskEntry = 0;
-		switch (mode & 3) {
-			case OREAD:		maskEntry = 4;	break;
-			case OWRITE:	maskEntry = 2;	break;
-			case ORDWR:		maskEntry = 6;	break;
-			case OEXEC:		maskEntry = 1;	break;
-		}
+		int maskEntry = MODE_MASK[mode & 3];
+
 		// handle OCLOSE: write access to parent directory
 		if ((mode & OCLOSE) != 0) {
 			// check permission on directory.
-			if (!parent.getPermissions().canAccess (cr, OWRITE, null))
+			if (!parent.stat.perm.canAccess (cr, OWRITE, null))
 				return false;
 		}
 		// check global access permissions
@@ -131,12 +179,16 @@ public class Permissions {
 			return true;
 		// check group permissions
 		maskEntry <<= 3;
-		if (cr.isMember (group) && (perm & maskEntry) == maskEntry)
-			return true;
+		if ((perm & maskEntry) == maskEntry) {
+			if (groupId == Identities.OTHER ? cr.isMember (group) : cr.isMember (groupId))
+				return true;
+		}
 		// check owner permissions
 		maskEntry <<= 3;
-		if (owner.equals (cr.getUser()) && (perm & maskEntry) == maskEntry)
-			return true;
+		if ((perm & maskEntry) == maskEntry && ownerId == cr.getUid()) {
+			if (ownerId != Identities.OTHER || owner.equals (cr.getUser()))
+				return true;
+		}
 		
 		// not authorized
 		return false;
@@ -205,7 +257,9 @@ public class Permissions {
 	 * @param uid String - user id of owner
 	 */
 	public void setOwner (String uid) {
+		checkModify();
 		owner = uid;
+		ownerId = Identities.getId (uid);
 	}
 	//-----------------------------------------------------------------
 	/**
@@ -213,7 +267,9 @@ public class Permissions {
 	 * @param gid String - group id
 	 */
 	public void setGroup (String gid) {
+		checkModify();
 		group = gid;
+		groupId = Identities.getId (gid);
 	}
 	//-----------------------------------------------------------------
 	/**
@@ -221,6 +277,16 @@ public class Permissions {
 	 * @param m int - permission flags
 	 */
 	public void setMode (int m) {
+		checkModify();
 		perm = m & 0x1FF;
 	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Shared instances can't be modified.</p>
+	 * @throws IllegalStateException - instance is shared
+	 */
+	private void checkModify () {
+		if (frozen)
+			throw new IllegalStateException ("shared permissions can't be modified");
+	}
 }
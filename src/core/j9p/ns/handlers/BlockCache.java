@@ -0,0 +1,318 @@
+
+//******************************************************************
+//*   PGMID.        SHARED DISK BLOCK CACHE.                       *
+//*   AUTHOR.       BERND R. FIX   >Y<                             *
+//*   DATE WRITTEN. 26/10/18.                                      *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.      *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE    *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.       *
+//******************************************************************
+//*                                                                *
+//*  StyxLib: Java-based Styx server framework                     *
+//*                                                                *
+//*  Copyright (C) 2009-2012, Bernd R. Fix                         *
+//*                                                                *
+//*  This program is free software; you can redistribute it and/or *
+//*  modify it under the terms of the GNU Lesser General Public    *
+//*  License (LGPL) as published by the Free Software Foundation;  *
+//*  either version 3 of the License, or (at your option) any      *
+//*  later version.                                                *
+//*                                                                *
+//*  This program is distributed in the hope that it will be use-  *
+//*  ful, but WITHOUT ANY WARRANTY; without even the implied       *
+//*  warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR       *
+//*  PURPOSE. See the GNU General Public License for more details. *
+//*                                                                *
+//*  You should have received a copy of the GNU General Public     *
+//*  Licenses along with this program; if not, see                 *
+//*  <http://www.gnu.org/licenses/>.                               *
+//*                                                                *
+//******************************************************************
+
+package j9p.ns.handlers;
+
+///////////////////////////////////////////////////////////////////////////////
+//import external declarations.
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+///////////////////////////////////////////////////////////////////////////////
+/**
+ * <p>The <b>BlockCache</b> is a server-wide cache for blocks of disk files
+ * shared by all sessions. Blocks are stored in direct (off-heap) memory
+ * of fixed size; if the cache is full, blocks are evicted with the CLOCK
+ * algorithm (second chance for recently used blocks).</p>
+ * <p>Blocks are identified by file, file version and block index: a new
+ * version of a file (after a write or an external change) never uses
+ * blocks of an older version; these blocks are no longer referenced and
+ * age out of the cache like any other unused block.</p>
+ * <p>Cache statistics can be published in the namespace with a process
+ * file using the <i>BlockCache.Stats</i> listener.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public class BlockCache {
+
+	//=================================================================
+	/**
+	 * <p>Size of a cached block.</p>
+	 */
+	public static final int BLOCK_SIZE = 65536;
+	/**
+	 * <p>Default capacity of the cache (64MB).</p>
+	 */
+	private static final long DEFAULT_CAPACITY = 64L * 1024 * 1024;
+
+	//=================================================================
+	/**
+	 * <p>Identifier of a cached block.</p>
+	 */
+	private static final class Key {
+
+		//-------------------------------------------------------------
+		/*
+		 * Attributes:
+		 */
+		final String	file;		// file identifier
+		final int		version;	// file version
+		final long		block;		// block index
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>Instantiate a new block identifier.</p>
+		 * @param file String - file identifier
+		 * @param version int - file version
+		 * @param block long - block index
+		 */
+		Key (String file, int version, long block) {
+			this.file = file;
+			this.version = version;
+			this.block = block;
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>Compare block identifiers.</p>
+		 * @param o Object - object to compare to
+		 * @return boolean - same block?
+		 */
+		public boolean equals (Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key k = (Key) o;
+			return block == k.block && version == k.version && file.equals (k.file);
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>Get hash code of block identifier.</p>
+		 * @return int - hash code
+		 */
+		public int hashCode () {
+			return file.hashCode() * 31 + version * 17 + (int) (block ^ (block >>> 32));
+		}
+	}
+
+	//=================================================================
+	/**
+	 * <p>Process file listener that publishes the cache statistics:
+	 * reading the file returns the current counters (one per line).</p>
+	 */
+	public static class Stats implements ProcessFile.Listener {
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>Data written to the file is ignored.</p>
+		 * @param data byte[] - incoming data from a write operation
+		 * @param offset long - offset into data
+		 */
+		public void asInput (byte[] data, long offset) {
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>Return cache statistics.</p>
+		 * @param offset long - offset into output (index)
+		 * @param count int - number of expected bytes
+		 * @return byte[] - statistics
+		 */
+		public byte[] getOutput (long offset, int count) {
+			if (offset != 0)
+				return null;
+			StringBuffer buf = new StringBuffer();
+			BlockCache c = instance;
+			if (c == null)
+				buf.append ("capacity ").append (capacity).append ("\nblocks 0/0\n")
+				   .append ("hits 0\nmisses 0\nevictions 0\n");
+			else
+				buf.append ("capacity ").append (c.numSlots * (long) BLOCK_SIZE)
+				   .append ("\nblocks ").append (c.index.size()).append ('/').append (c.numSlots)
+				   .append ("\nhits ").append (c.hits.get())
+				   .append ("\nmisses ").append (c.misses.get())
+				   .append ("\nevictions ").append (c.evictions.get())
+				   .append ('\n');
+			byte[] res = buf.toString().getBytes();
+			if (res.length <= count)
+				return res;
+			byte[] trunc = new byte [count];
+			System.arraycopy (res, 0, trunc, 0, count);
+			return trunc;
+		}
+	}
+
+	//=================================================================
+	/*
+	 * Shared instance:
+	 */
+	private static long capacity = DEFAULT_CAPACITY;	// configured capacity
+	private static volatile BlockCache instance = null;	// cache instance
+
+	//=================================================================
+	/*
+	 * Attributes:
+	 */
+	private int numSlots;							// number of block slots
+	private ByteBuffer store;						// block storage (off-heap)
+	private AtomicReferenceArray<Key> keys;			// block in slot
+	private int[] lengths;							// length of block in slot
+	private Object[] locks;							// slot locks (block data)
+	private AtomicIntegerArray used;				// reference bits (CLOCK)
+	private ConcurrentHashMap<Key,Integer> index;	// block to slot mapping
+	private int hand = 0;							// clock hand
+	private AtomicLong hits = new AtomicLong (0);		// number of cache hits
+	private AtomicLong misses = new AtomicLong (0);		// number of cache misses
+	private AtomicLong evictions = new AtomicLong (0);	// number of evicted blocks
+
+	//=================================================================
+	/**
+	 * <p>Instantiate a new block cache.</p>
+	 * @param slots int - number of block slots
+	 */
+	private BlockCache (int slots) {
+		numSlots = slots;
+		store = ByteBuffer.allocateDirect (slots * BLOCK_SIZE);
+		keys = new AtomicReferenceArray<Key> (slots);
+		lengths = new int [slots];
+		locks = new Object [slots];
+		for (int n = 0; n < slots; n++)
+			locks[n] = new Object();
+		used = new AtomicIntegerArray (slots);
+		index = new ConcurrentHashMap<Key,Integer>();
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Set the capacity of the cache (in bytes). Must be called
+	 * before the cache is used; a capacity of 0 disables the cache.</p>
+	 * @param bytes long - capacity of cache
+	 */
+	public static synchronized void setCapacity (long bytes) {
+		capacity = Math.max (0, bytes);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get the cache (allocated on first use).</p>
+	 * @return BlockCache - cache instance (or null if disabled)
+	 */
+	static BlockCache getInstance () {
+		BlockCache c = instance;
+		if (c != null)
+			return c;
+		synchronized (BlockCache.class) {
+			if (instance == null) {
+				// the cache is limited by the size of a direct buffer.
+				long slots = Math.min (capacity / BLOCK_SIZE, Integer.MAX_VALUE / BLOCK_SIZE);
+				if (slots == 0)
+					return null;
+				instance = new BlockCache ((int) slots);
+			}
+			return instance;
+		}
+	}
+
+	//=================================================================
+	/**
+	 * <p>Copy data from a cached block.</p>
+	 * @param file String - file identifier
+	 * @param version int - file version
+	 * @param block long - block index
+	 * @param dst byte[] - destination buffer
+	 * @param dstOfs int - offset into destination buffer
+	 * @param from int - offset into block
+	 * @param len int - max. number of bytes to copy
+	 * @return int - length of cached block (or -1 if not cached)
+	 */
+	int get (String file, int version, long block, byte[] dst, int dstOfs, int from, int len) {
+		Key key = new Key (file, version, block);
+		Integer slot = index.get (key);
+		if (slot != null) {
+			int pos = slot.intValue();
+			// the slot is locked while its block is copied, so it
+			// can't be replaced concurrently.
+			synchronized (locks[pos]) {
+				if (key.equals (keys.get (pos))) {
+					// copy data.
+					int blen = lengths[pos];
+					int num = Math.min (len, blen - from);
+					if (num > 0) {
+						ByteBuffer buf = store.duplicate();
+						buf.position (pos * BLOCK_SIZE + from);
+						buf.get (dst, dstOfs, num);
+					}
+					used.set (pos, 1);
+					hits.incrementAndGet();
+					return blen;
+				}
+			}
+		}
+		misses.incrementAndGet();
+		return -1;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Store a block in the cache.</p>
+	 * @param file String - file identifier
+	 * @param version int - file version
+	 * @param block long - block index
+	 * @param data byte[] - block data
+	 * @param len int - length of block
+	 */
+	synchronized void put (String file, int version, long block, byte[] data, int len) {
+		Key key = new Key (file, version, block);
+		if (index.containsKey (key))
+			return;
+
+		// find a free slot (CLOCK eviction).
+		int pos;
+		while (true) {
+			pos = hand;
+			hand = (hand + 1) % numSlots;
+			Key old = keys.get (pos);
+			if (old == null)
+				break;
+			if (used.get (pos) != 0) {
+				// second chance.
+				used.set (pos, 0);
+				continue;
+			}
+			index.remove (old);
+			evictions.incrementAndGet();
+			break;
+		}
+		// store block.
+		synchronized (locks[pos]) {
+			ByteBuffer buf = store.duplicate();
+			buf.position (pos * BLOCK_SIZE);
+			buf.put (data, 0, len);
+			lengths[pos] = len;
+			keys.set (pos, key);
+			used.set (pos, 1);
+		}
+		index.put (key, pos);
+	}
+}
@@ -0,0 +1,494 @@
+
+//******************************************************************
+//*   PGMID.        TTL CACHING FILE DECORATOR.                    *
+//*   AUTHOR.       BERND R. FIX   >Y<                             *
+//*   DATE WRITTEN. 26/10/18.                                      *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.      *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE    *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.       *
+//******************************************************************
+//*                                                                *
+//*  StyxLib: Java-based Styx server framework                     *
+//*                                                                *
+//*  Copyright (C) 2009-2012, Bernd R. Fix                         *
+//*                                                                *
+//*  This program is free software; you can redistribute it and/or *
+//*  modify it under the terms of the GNU Lesser General Public    *
+//*  License (LGPL) as published by the Free Software Foundation;  *
+//*  either version 3 of the License, or (at your option) any      *
+//*  later version.                                                *
+//*                                                                *
+//*  This program is distributed in the hope that it will be use-  *
+//*  ful, but WITHOUT ANY WARRANTY; without even the implied       *
+//*  warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR       *
+//*  PURPOSE. See the GNU General Public License for more details. *
+//*                                                                *
+//*  You should have received a copy of the GNU General Public     *
+//*  Licenses along with this program; if not, see                 *
+//*  <http://www.gnu.org/licenses/>.                               *
+//*                                                                *
+//******************************************************************
+
+package j9p.ns.handlers;
+
+///////////////////////////////////////////////////////////////////////////////
+//import external declarations.
+
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import j9p.auth.Credential;
+import j9p.ns.File;
+import j9p.ns.Permissions;
+import j9p.util.Blob;
+
+
+///////////////////////////////////////////////////////////////////////////////
+/**
+ * <p>A <b>CachedFile</b> wraps another file handler (the source) with
+ * expensive content and serves reads from a snapshot of the content.
+ * A snapshot is valid for a given time (TTL); an expired snapshot is
+ * never served: it is reloaded by the next reader. With refresh-ahead
+ * (default: at 80% of the TTL) the snapshot is refreshed in the
+ * background before it expires while readers are still served from
+ * the old snapshot, so readers of frequently used content don't wait
+ * for the source.</p>
+ * <p>A reader gets consistent slices: all reads of a handle after a
+ * read at offset 0 are served from the same snapshot. Content larger
+ * than the size limit is not cached (reads go to the source); writes
+ * are passed to the source and drop the snapshot.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public class CachedFile extends File {
+
+	//=================================================================
+	/*
+	 * Constants:
+	 */
+	private static final long DEFAULT_TTL = 60000;			// snapshot TTL (msec)
+	private static final long DEFAULT_AHEAD = 80;			// refresh-ahead (% of TTL)
+	private static final int DEFAULT_MAX = 1024 * 1024;	// max. snapshot size
+	private static final int CHUNK = 65536;				// size of source reads
+
+	//=================================================================
+	/**
+	 * <p>Snapshot of the source content.</p>
+	 */
+	private static final class Snapshot {
+
+		//-------------------------------------------------------------
+		/*
+		 * Attributes:
+		 */
+		final byte[]	data;		// content (null if not cacheable)
+		final long		time;		// time of load
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>Instantiate a new snapshot.</p>
+		 * @param data byte[] - content (or null)
+		 * @param time long - time of load
+		 */
+		Snapshot (byte[] data, long time) {
+			this.data = data;
+			this.time = time;
+		}
+	}
+
+	//=================================================================
+	/**
+	 * <p>File handle with the snapshot used by the reader and
+	 * the (lazily opened) handle of the source.</p>
+	 */
+	private class CachedHandle extends Handle {
+
+		//-------------------------------------------------------------
+		/*
+		 * Attributes:
+		 */
+		Snapshot	snap = null;		// snapshot of reader
+		Handle		srcHdl = null;		// handle of source
+		int			mode;				// open mode
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>Get handle of the source (opened on first use).</p>
+		 * @return Handle - source handle (or null)
+		 */
+		synchronized Handle getSource () {
+			if (srcHdl == null) {
+				Handle hdl = source.open (userCredential, mode);
+				if (hdl.rc != Handle.RC_OK)
+					return null;
+				srcHdl = hdl;
+			}
+			return srcHdl;
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>Release handle (and source handle).</p> 
+		 */
+		public synchronized void release () {
+			if (srcHdl != null) {
+				srcHdl.release();
+				source.release();
+				srcHdl = null;
+			}
+			snap = null;
+		}
+	}
+
+	//=================================================================
+	/*
+	 * Shared refresh threads:
+	 */
+	private static ExecutorService refresher = null;
+
+	//=================================================================
+	/*
+	 * Attributes:
+	 */
+	private File				source = null;			// wrapped file handler
+	private long				ttl = DEFAULT_TTL;		// snapshot TTL (msec)
+	private long				ahead = DEFAULT_TTL * DEFAULT_AHEAD / 100;	// age that triggers refresh (msec)
+	private int					maxBytes = DEFAULT_MAX;	// max. snapshot size
+	private volatile Snapshot	current = null;			// current snapshot
+	private volatile Credential	reader = null;			// credential for refresh
+	private AtomicBoolean		loading = new AtomicBoolean (false);	// refresh running?
+	private Object				loadLock = new Object();	// serialize initial loads
+
+	//=================================================================
+	/**
+	 * <p>Instantiate a new (un-initialized) cached file.</p>
+	 */
+	public CachedFile () {
+		super();
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Instantiate a new cached file for a source file.</p>
+	 * @param name String - name of entry
+	 * @param perm Permissions - access permissions for file
+	 * @param device String - mount handler
+	 * @param source File - wrapped file handler
+	 * @param ttl long - time-to-live of snapshots (msec)
+	 */
+	public CachedFile (String name, Permissions perm, String device, File source, long ttl) {
+		super (name, perm, device);
+		this.source = source;
+		this.ttl = Math.max (0, ttl);
+		this.ahead = this.ttl * DEFAULT_AHEAD / 100;
+		source.init (name, perm, device);
+	}
+
+	//=================================================================
+	/**
+	 * <p>Start handler: instantiate the source file ("source"
+	 * attribute: class name of the file handler) and pass the
+	 * parameters to it.</p>
+	 * <p>Parameters are "ttl" (msec, default: 60000), "maxBytes"
+	 * (max. size of a snapshot, default 1MB) and "ahead" (start
+	 * the refresh at given percentage of the TTL, default 80).</p>
+	 * @param p Hashtable<String,String> - parameter set
+	 * @return Process - started engine of source (or null)
+	 */
+	public Process startHandler (Hashtable<String,String> p) {
+		if (!setup (p))
+			return null;
+		return source.startHandler (p);
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Take over the running engine of the source of an unchanged
+	 * cached file from a replaced configuration.</p>
+	 * @param proc Process - running engine of source
+	 * @param p Hashtable<String,String> - parameter set
+	 * @return boolean - engine taken over?
+	 */
+	public boolean adoptHandler (Process proc, Hashtable<String,String> p) {
+		return setup (p) && source.adoptHandler (proc, p);
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Read parameters and instantiate the source file (an
+	 * existing source of the same type is kept).</p>
+	 * @param p Hashtable<String,String> - parameter set
+	 * @return boolean - successful setup?
+	 */
+	private boolean setup (Hashtable<String,String> p) {
+		ttl = getParam (p, "ttl", DEFAULT_TTL);
+		maxBytes = (int) Math.min (Integer.MAX_VALUE - 1, getParam (p, "maxBytes", DEFAULT_MAX));
+		ahead = ttl * Math.min (100, getParam (p, "ahead", DEFAULT_AHEAD)) / 100;
+
+		String type = p.get ("source");
+		if (type == null) {
+			System.err.println ("cacheFile: missing 'source' attribute");
+			return false;
+		}
+		if (source != null && source.getClass().getName().equals (type))
+			return true;
+		try {
+			source = (File) Class.forName (type).newInstance();
+		}
+		catch (Exception e) {
+			System.err.println ("cacheFile: can't instantiate source '" + type + "'");
+			return false;
+		}
+		return true;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get numeric parameter value.</p>
+	 * @param p Hashtable<String,String> - parameter set
+	 * @param name String - name of parameter
+	 * @param def long - default value
+	 * @return long - parameter value
+	 */
+	private static long getParam (Hashtable<String,String> p, String name, long def) {
+		String val = p.get (name);
+		if (val != null) {
+			try {
+				return Math.max (0, Long.parseLong (val));
+			}
+			catch (NumberFormatException e) {
+			}
+		}
+		return def;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Initialize entry (and source).</p> 
+	 * @param name String - name of entry
+	 * @param perm Permissions - access permissions for file
+	 * @param device String - mount handler
+	 */
+	public void init (String name, Permissions perm, String device) {
+		super.init (name, perm, device);
+		if (source != null)
+			source.init (name, perm, device);
+	}
+
+	//=================================================================
+	/**
+	 * <p>Open file: returns a handle that keeps the snapshot used by
+	 * the reader. Handles for writing open the source immediately.</p>
+	 * @param cr Credential - authenticated user credential
+	 * @param mode int - access mode
+	 * @return Handle - handle to opened file
+	 */
+	public Handle open (Credential cr, int mode) {
+
+		// try to open entry.
+		Handle hdl = super.open (cr, mode);
+		if (hdl.rc != Handle.RC_OK || source == null)
+			return hdl;
+
+		// create our own handle.
+		CachedHandle cHdl = new CachedHandle();
+		cHdl.rc = hdl.rc;
+		cHdl.forRead = hdl.forRead;
+		cHdl.forWrite = hdl.forWrite;
+		cHdl.userCredential = hdl.userCredential;
+		cHdl.mode = mode;
+		if (cHdl.forWrite && cHdl.getSource() == null) {
+			// source refused access.
+			release();
+			hdl.rc = Handle.RC_NO_PERMISSION;
+			return hdl;
+		}
+		return cHdl;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Read entry content starting at offset for given number
+	 * of bytes.</p>
+	 * @param hdl Handle - handle to opened file
+	 * @param offset long - offset into entry content
+	 * @param count int - number of bytes to be read
+	 * @param fmt Formatter - protocol-specific entry representation
+	 * @return byte[] - read content
+	 */
+	public byte[] read (Handle hdl, long offset, int count, AttributeHandler fmt) {
+		if (!(hdl instanceof CachedHandle))
+			return null;
+		CachedHandle cHdl = (CachedHandle) hdl;
+		reader = cHdl.userCredential;
+
+		// get snapshot of reader (new snapshot on reads from start).
+		Snapshot s = cHdl.snap;
+		if (s == null || offset == 0)
+			cHdl.snap = s = getSnapshot();
+		if (s == null || s.data == null) {
+			// content not cached: read from source.
+			Handle srcHdl = cHdl.getSource();
+			return (srcHdl == null ? null : source.read (srcHdl, offset, count, fmt));
+		}
+		// return slice of snapshot.
+		byte[] data = s.data;
+		if (offset < 0 || offset >= data.length)
+			return null;
+		int num = (int) Math.min (data.length - offset, count);
+		byte[] res = new byte [num];
+		System.arraycopy (data, (int) offset, res, 0, num);
+		return res;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Write entry content: data is written to the source and the
+	 * current snapshot is dropped.</p>
+	 * @param hdl Handle - handle to opened file
+	 * @param data byte[] - data to be written
+	 * @param offset long - offset into entry content
+	 * @param count int - number of bytes to be written
+	 * @return int - number of bytes written
+	 */
+	public int write (Handle hdl, byte[] data, long offset, int count) {
+		if (!(hdl instanceof CachedHandle))
+			return 0;
+		Handle srcHdl = ((CachedHandle) hdl).getSource();
+		if (srcHdl == null)
+			return 0;
+		int num = source.write (srcHdl, data, offset, count);
+		if (num > 0) {
+			current = null;
+			setModified();
+		}
+		return num;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get size of entry (size of the current snapshot; a missing
+	 * or expired snapshot is loaded).</p>
+	 * @return long - entry size
+	 */
+	public long getSize () {
+		if (source == null)
+			return 0;
+		Snapshot s = getSnapshot();
+		if (s == null)
+			return 0;
+		// content not cached.
+		if (s.data == null)
+			return source.getSize();
+		return s.data.length;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Get the current snapshot: a missing or expired snapshot is
+	 * loaded by the caller, a snapshot that reached the refresh-ahead
+	 * age is refreshed in the background.</p>
+	 * @return Snapshot - current snapshot (or null)
+	 */
+	private Snapshot getSnapshot () {
+		Snapshot s = current;
+		if (s == null || age (s) >= ttl) {
+			synchronized (loadLock) {
+				// snapshot may have been loaded while waiting.
+				s = current;
+				if (s == null || age (s) >= ttl)
+					s = load();
+			}
+		}
+		else if (age (s) >= ahead)
+			refresh();
+		return s;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get age of a snapshot.</p>
+	 * @param s Snapshot - snapshot
+	 * @return long - age (in msec)
+	 */
+	private static long age (Snapshot s) {
+		return System.currentTimeMillis() - s.time;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Start a background refresh (if none is running).</p>
+	 */
+	private void refresh () {
+		if (!loading.compareAndSet (false, true))
+			return;
+		getRefresher().execute (new Runnable() {
+			public void run () {
+				try {
+					synchronized (loadLock) {
+						load();
+					}
+				}
+				finally {
+					loading.set (false);
+				}
+			}
+		});
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Read the content of the source into a new snapshot. The
+	 * source is read with the credential of the last reader (or of
+	 * the owner if the file has not been read yet).</p>
+	 * @return Snapshot - new snapshot (or null if source failed)
+	 */
+	private Snapshot load () {
+		Credential cr = reader;
+		if (cr == null)
+			cr = new Credential (stat.perm.getOwner());
+		Handle hdl = source.open (cr, Permissions.OREAD);
+		if (hdl.rc != Handle.RC_OK)
+			return null;
+		Blob buf = new Blob();
+		boolean tooLarge = false;
+		try {
+			long pos = 0;
+			while (true) {
+				byte[] chunk = source.read (hdl, pos, CHUNK, null);
+				if (chunk == null || chunk.length == 0)
+					break;
+				pos += chunk.length;
+				if (pos > maxBytes) {
+					tooLarge = true;
+					break;
+				}
+				buf.putArray (chunk);
+			}
+		}
+		finally {
+			hdl.release();
+			source.release();
+		}
+		byte[] data = (tooLarge ? null : buf.asByteArray (false));
+		Snapshot prev = current;
+		Snapshot s = new Snapshot (data, System.currentTimeMillis());
+		current = s;
+		// changed content is a modification of the file.
+		if (prev != null && !Arrays.equals (prev.data, data))
+			setModified();
+		return s;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get the shared refresh threads (created on first use).</p>
+	 * @return ExecutorService - refresh threads
+	 */
+	private static synchronized ExecutorService getRefresher () {
+		if (refresher == null) {
+			refresher = Executors.newCachedThreadPool (new ThreadFactory() {
+				public Thread newThread (Runnable r) {
+					Thread t = new Thread (r, "CachedFile");
+					t.setDaemon (true);
+					return t;
+				}
+			});
+		}
+		return refresher;
+	}
+}
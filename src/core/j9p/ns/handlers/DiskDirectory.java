@@ -0,0 +1,617 @@
+
+//******************************************************************
+//*   PGMID.        HOST DIRECTORY TREE IN NAMESPACE.              *
+//*   AUTHOR.       BERND R. FIX   >Y<                             *
+//*   DATE WRITTEN. 26/10/18.                                      *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.      *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE    *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.       *
+//******************************************************************
+//*                                                                *
+//*  StyxLib: Java-based Styx server framework                     *
+//*                                                                *
+//*  Copyright (C) 2009-2012, Bernd R. Fix                         *
+//*                                                                *
+//*  This program is free software; you can redistribute it and/or *
+//*  modify it under the terms of the GNU Lesser General Public    *
+//*  License (LGPL) as published by the Free Software Foundation;  *
+//*  either version 3 of the License, or (at your option) any      *
+//*  later version.                                                *
+//*                                                                *
+//*  This program is distributed in the hope that it will be use-  *
+//*  ful, but WITHOUT ANY WARRANTY; without even the implied       *
+//*  warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR       *
+//*  PURPOSE. See the GNU General Public License for more details. *
+//*                                                                *
+//*  You should have received a copy of the GNU General Public     *
+//*  Licenses along with this program; if not, see                 *
+//*  <http://www.gnu.org/licenses/>.                               *
+//*                                                                *
+//******************************************************************
+
+package j9p.ns.handlers;
+
+///////////////////////////////////////////////////////////////////////////////
+//import external declarations.
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import j9p.auth.Credential;
+import j9p.ns.Directory;
+import j9p.ns.Entry;
+import j9p.ns.Permissions;
+import j9p.util.Blob;
+
+
+///////////////////////////////////////////////////////////////////////////////
+/**
+ * <p>A <b>DiskDirectory</b> maps a directory in the local filesystem of
+ * the server (including all sub-directories) into the namespace. Entries
+ * are created on demand when they are walked to or listed; listings are
+ * read directly from the filesystem, so directories of any size can be
+ * served without enumerating them in advance.</p>
+ * <p>Created entries (and their file attributes) are cached for a limited
+ * time ("ttl" attribute) before they are checked against the filesystem
+ * again. If the directory is watched for changes ("watch" attribute;
+ * see <i>DiskMonitor</i>), cached entries are updated on change and are
+ * kept without checking. The number of cached entries per directory is
+ * limited ("cache" attribute); entries that are in use (opened or
+ * referenced by a fid) are never dropped. Dropped entries get a new
+ * identifier when they are accessed again.</p>
+ * <p>Files are accessed like disk files ("diskFile"); sub-directories and
+ * files inherit the permissions of the directory (files without execute
+ * permissions). Entries can't be created, removed or renamed. Symbolic
+ * links are only followed if their target is inside of the exported
+ * directory.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public class DiskDirectory extends Directory {
+
+	//=================================================================
+	/*
+	 * Constants:
+	 */
+	private static final int DEFAULT_TTL	= 5;		// cache time in seconds
+	private static final int DEFAULT_CACHE	= 1024;		// cached entries per directory
+
+	//=================================================================
+	/**
+	 * <p>Cached directory entry.</p>
+	 */
+	protected static class Cached {
+
+		//-------------------------------------------------------------
+		/*
+		 * Attributes:
+		 */
+		Entry	entry;			// namespace entry
+		long	checked;		// time of last check (ms)
+	}
+
+	//=================================================================
+	/**
+	 * <p>Change listener for a watched directory. The listener only
+	 * keeps a weak reference to the directory, so dropped directories
+	 * are not kept alive by the monitor.</p>
+	 */
+	private static class DirWatch implements DiskMonitor.Listener {
+
+		//-------------------------------------------------------------
+		/*
+		 * Attributes:
+		 */
+		WeakReference<DiskDirectory> ref;	// watched directory
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>An entry in the directory has changed.</p>
+		 * @param name String - name of changed entry (or null)
+		 * @return boolean - keep listening?
+		 */
+		public boolean changed (String name) {
+			DiskDirectory dir = ref.get();
+			if (dir == null)
+				return false;
+			dir.invalidate (name);
+			return true;
+		}
+	}
+
+	//=================================================================
+	/**
+	 * <p>Directory handle: a listing reads the directory from the
+	 * filesystem sequentially (starting at offset 0).</p>
+	 */
+	protected static class DiskListing extends Handle {
+
+		//-------------------------------------------------------------
+		/*
+		 * Attributes:
+		 */
+		DirectoryStream<Path>	stream = null;	// directory stream
+		Iterator<Path>			iter = null;	// position in stream
+		byte[]					pending = null;	// stat record not yet returned
+		long					next = 0;		// offset of next record
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>(Re-)Start listing of a directory.</p>
+		 * @param dir Path - directory in filesystem
+		 * @throws IOException - directory can't be read
+		 */
+		void reset (Path dir) throws IOException {
+			release();
+			stream = Files.newDirectoryStream (dir);
+			iter = stream.iterator();
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>Release handle (close directory stream).</p>
+		 */
+		public void release () {
+			try {
+				if (stream != null)
+					stream.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			stream = null;
+			iter = null;
+			pending = null;
+			next = 0;
+		}
+	}
+
+	//=================================================================
+	/*
+	 * Attributes:
+	 */
+	protected Path dirPath = null;						// directory in filesystem
+	protected Path rootPath = null;						// real path of exported directory
+	protected Hashtable<String,String> params = null;	// parameter set
+	protected long ttl = DEFAULT_TTL * 1000L;			// cache time (ms)
+	protected LinkedHashMap<String,Cached> cache;		// cached entries (LRU order)
+	private DirWatch watcher = null;					// change listener
+
+	//=================================================================
+	/**
+	 * <p>Instantiate a new disk directory in the namespace.</p>
+	 * @param name String - name of entry
+	 * @param perm Permissions - access permissions for directory
+	 * @param device String - mount handler
+	 */
+	public DiskDirectory (String name, Permissions perm, String device) {
+		super (name, perm, device);
+		prepare (DEFAULT_CACHE);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Constructor for uninitialized entry.</p>
+	 */
+	public DiskDirectory () {
+		prepare (DEFAULT_CACHE);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Allocate entry cache.</p>
+	 * @param limit int - maximum number of cached entries
+	 */
+	private void prepare (final int limit) {
+		cache = new LinkedHashMap<String,Cached> (16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			protected boolean removeEldestEntry (Map.Entry<String,Cached> eldest) {
+				if (size() <= limit)
+					return false;
+				// drop least recently used entry that is not in use
+				// (opened or referenced by a fid).
+				Iterator<Cached> it = values().iterator();
+				while (it.hasNext()) {
+					j9p.ns.Entry e = it.next().entry;
+					if (!e.isInUse() && !e.isReferenced()) {
+						it.remove();
+						drop (e);
+						break;
+					}
+				}
+				// map already modified.
+				return false;
+			}
+		};
+	}
+
+	//=================================================================
+	/**
+	 * <p>Read configuration: the "ref" attribute specifies the path
+	 * of the directory in the filesystem; the optional "ttl" attribute
+	 * the cache time of entries (in seconds) and the optional "cache"
+	 * attribute the maximum number of cached entries. The directory is
+	 * watched for changes unless the "watch" attribute is "false". All
+	 * parameters are passed on to the entries of the directory.</p>
+	 * @param p Hashtable<String,String> - parameter set
+	 * @return Process - started thread (or null)
+	 */
+	public Process startHandler (Hashtable<String,String> p) {
+		params = p;
+		dirPath = Paths.get (p.get ("ref"));
+		if (rootPath == null) {
+			// exported directory.
+			try {
+				rootPath = dirPath.toRealPath();
+			}
+			catch (IOException e) {
+				rootPath = dirPath.toAbsolutePath().normalize();
+			}
+		}
+		String val = p.get ("ttl");
+		if (val != null)
+			ttl = Integer.parseInt (val) * 1000L;
+		val = p.get ("cache");
+		if (val != null)
+			prepare (Math.max (1, Integer.parseInt (val)));
+		// watch directory for changes.
+		if (!"false".equals (p.get ("watch"))) {
+			DirWatch w = new DirWatch();
+			w.ref = new WeakReference<DiskDirectory> (this);
+			if (DiskMonitor.watch (dirPath, w))
+				watcher = w;
+		}
+		return null;
+	}
+
+	//=================================================================
+	//	Manage list of contained entries.
+	//=================================================================
+	/**
+	 * <p>Entries are created on demand; the directory is never
+	 * traversed as a whole.</p>
+	 * @return boolean - entries available?
+	 */
+	public boolean isPopulated () {
+		return false;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get number of (cached) entries in this directory.</p>
+	 * @return int - number of cached directory entries
+	 */
+	public int numEntries () {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get indexed (cached) entry in directory.</p>
+	 * @param pos int - directory index
+	 * @return Entry - selected entry
+	 */
+	public Entry getEntryAt (int pos) {
+		synchronized (cache) {
+			if (pos < 0 || pos >= cache.size())
+				return null;
+			Iterator<Cached> it = cache.values().iterator();
+			while (pos-- > 0)
+				it.next();
+			return it.next().entry;
+		}
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get named namespace entry. The entry is created (or
+	 * checked again) if it is not cached (anymore).</p>
+	 * @param name String - name of entry (sub-directory)
+	 * @return Entry - associated namespace entry
+	 */
+	public Entry getEntryByName (String name) {
+		if (name == null || name.length() == 0 || name.equals (".")
+			|| name.equals ("..") || name.indexOf ('/') != -1)
+			return null;
+		return lookup (name, System.currentTimeMillis());
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Adding entries is not supported.</p>
+	 * @param e Entry - entry to be added
+	 * @return boolean - successful operation
+	 */
+	public boolean add (Entry e) {
+		return false;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Removing entries is not supported.</p>
+	 * @param e Entry - entry to be removed
+	 * @return boolean - remove successful?
+	 */
+	public boolean remove (Entry e) {
+		return false;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Renaming entries is not supported.</p>
+	 * @param e Entry - entry to be renamed
+	 * @param newName String - new name of entry
+	 * @return boolean - rename allowed?
+	 */
+	protected boolean rename (Entry e, String newName) {
+		return false;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Creating entries is not supported.</p>
+	 * @param asDir boolean - create (sub-)directory?
+	 * @param name String - name of entry
+	 * @param perm int - access mode (permissions)
+	 * @param cr Credential - user credential
+	 * @return Entry - new entry (or null)
+	 */
+	public Entry create (boolean asDir, String name, int perm, Credential cr) {
+		return null;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Get (cached) entry for a name in the directory. Entries
+	 * not checked within the cache time (or invalidated by a change
+	 * event) are checked against the filesystem and replaced if the
+	 * type of entry has changed.</p>
+	 * @param name String - name of entry
+	 * @param now long - current time (ms)
+	 * @return Entry - directory entry (or null)
+	 */
+	protected Entry lookup (String name, long now) {
+		// check cache first.
+		Cached c;
+		synchronized (cache) {
+			c = cache.get (name);
+		}
+		if (c != null && c.checked != 0 && (watcher != null || now - c.checked < ttl))
+			return c.entry;
+
+		// get attributes of file.
+		Path path = dirPath.resolve (name);
+		BasicFileAttributes attrs = null;
+		try {
+			attrs = Files.readAttributes (path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+			// follow symbolic links only within the exported directory.
+			if (attrs.isSymbolicLink()) {
+				if (!path.toRealPath().startsWith (rootPath))
+					throw new IOException ("link target outside of exported directory");
+				attrs = Files.readAttributes (path, BasicFileAttributes.class);
+			}
+		}
+		catch (IOException e) {
+			// entry does not exist (anymore).
+			synchronized (cache) {
+				c = cache.remove (name);
+			}
+			if (c != null)
+				drop (c.entry);
+			return null;
+		}
+		if (!attrs.isDirectory() && !attrs.isRegularFile())
+			// skip special files.
+			return null;
+
+		// refresh cached entry of same type.
+		if (c != null && attrs.isDirectory() == (c.entry instanceof DiskDirectory)) {
+			if (c.entry instanceof DiskFile)
+				((DiskFile) c.entry).refresh (attrs);
+			else
+				((DiskDirectory) c.entry).refresh (attrs);
+			c.checked = now;
+			return c.entry;
+		}
+		// create new entry.
+		Entry e = newEntry (name, path, attrs);
+		if (e == null)
+			return null;
+		Cached other;
+		synchronized (cache) {
+			// check for concurrent creation.
+			other = cache.get (name);
+			if (other != null && other != c) {
+				drop (e);
+				return other.entry;
+			}
+			c = new Cached();
+			c.entry = e;
+			c.checked = now;
+			other = cache.put (name, c);
+		}
+		// drop replaced entry (type changed).
+		if (other != null)
+			drop (other.entry);
+		e.setParent (this);
+		return e;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>An entry in the (watched) directory has changed: update
+	 * the cached entry.</p>
+	 * @param name String - name of changed entry (or null for all)
+	 */
+	protected void invalidate (String name) {
+		if (name == null) {
+			// events lost: check all entries on next access.
+			synchronized (cache) {
+				for (Cached c : cache.values())
+					c.checked = 0;
+			}
+			return;
+		}
+		Cached c;
+		synchronized (cache) {
+			c = cache.get (name);
+		}
+		if (c == null)
+			return;
+		// re-check entry.
+		c.checked = 0;
+		lookup (name, System.currentTimeMillis());
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Stop watching a dropped directory entry.</p>
+	 * @param e Entry - dropped entry
+	 */
+	private static void drop (Entry e) {
+		if (!(e instanceof DiskDirectory))
+			return;
+		DiskDirectory dir = (DiskDirectory) e;
+		DirWatch w = dir.watcher;
+		dir.watcher = null;
+		if (w != null)
+			DiskMonitor.unwatch (dir.dirPath, w);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Create a new entry for a file or directory.</p>
+	 * @param name String - name of entry
+	 * @param path Path - path to file or directory
+	 * @param attrs BasicFileAttributes - file attributes
+	 * @return Entry - new entry (or null)
+	 */
+	protected Entry newEntry (String name, Path path, BasicFileAttributes attrs) {
+		// pass parameters to new entry.
+		Hashtable<String,String> p = new Hashtable<String,String> (params);
+		p.put ("ref", path.toString());
+
+		// inherit permissions.
+		Permissions perm = getPermissions();
+		Entry e;
+		if (attrs.isDirectory()) {
+			DiskDirectory dir = new DiskDirectory();
+			dir.rootPath = rootPath;
+			e = dir;
+		} else {
+			perm.setMode (perm.getMode() & ~(Permissions.PERM_OX | Permissions.PERM_GX | Permissions.PERM_AX));
+			// files are watched by their directory.
+			if (!"false".equals (p.get ("watch")))
+				p.put ("watch", "parent");
+			e = new DiskFile();
+		}
+		e.startHandler (p);
+		e.init (name, perm, stat.device);
+		if (e instanceof DiskFile)
+			((DiskFile) e).refresh (attrs);
+		else
+			((DiskDirectory) e).refresh (attrs);
+		return e;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Update modification time of directory from the
+	 * filesystem.</p>
+	 * @param attrs BasicFileAttributes - directory attributes
+	 */
+	void refresh (BasicFileAttributes attrs) {
+		int mtime = (int) (attrs.lastModifiedTime().toMillis() / 1000);
+		synchronized (this) {
+			if (stat.mtime == mtime)
+				return;
+			Attributes attr = stat.copy();
+			attr.mtime = mtime;
+			attr.version++;
+			stat = attr;
+		}
+	}
+
+	//=================================================================
+	/**
+	 * <p>Open directory for user with credential for access.</p>
+	 * @param cr Credential - authenticated user credential
+	 * @param mode int - access mode
+	 * @return Handle - handle to opened directory
+	 */
+	public Handle open (Credential cr, int mode) {
+
+		// try to open entry.
+		Handle hdl = super.open (cr, mode);
+		if (hdl.rc != Handle.RC_OK)
+			// open failed on basic level
+			return hdl;
+
+		// create our own handle.
+		DiskListing lHdl = new DiskListing();
+		lHdl.rc = hdl.rc;
+		lHdl.forRead = hdl.forRead;
+		lHdl.forWrite = hdl.forWrite;
+		lHdl.userCredential = hdl.userCredential;
+		return lHdl;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Read directory listing: stat records of all entries that
+	 * fit into the requested window. Listings are read sequentially;
+	 * a read at offset 0 restarts the listing.</p>
+	 * @param hdl Handle - handle to opened directory
+	 * @param offset long - offset into listing
+	 * @param size int - number of bytes to be read
+	 * @param fmt Formatter - protocol-specific entry representation
+	 * @return byte[] - read content
+	 */
+	public byte[] read (Handle hdl, long offset, int size, AttributeHandler fmt) {
+		if (!(hdl instanceof DiskListing) || size < 0)
+			return null;
+		DiskListing lHdl = (DiskListing) hdl;
+		setAccessed();
+
+		synchronized (lHdl) {
+			try {
+				// (re-)start listing.
+				if (offset == 0 || lHdl.stream == null)
+					lHdl.reset (dirPath);
+				if (offset != lHdl.next)
+					return null;
+
+				// assemble stat records that fit into the window.
+				Blob res = new Blob();
+				int count = 0;
+				long now = System.currentTimeMillis();
+				while (true) {
+					byte[] stat = lHdl.pending;
+					lHdl.pending = null;
+					while (stat == null && lHdl.iter.hasNext()) {
+						Entry e = lookup (lHdl.iter.next().getFileName().toString(), now);
+						if (e != null)
+							stat = fmt.getStat (e);
+					}
+					if (stat == null)
+						break;
+					if (count + stat.length > size) {
+						lHdl.pending = stat;
+						break;
+					}
+					res.putArray (stat);
+					count += stat.length;
+				}
+				lHdl.next += count;
+				return (count == 0 ? null : res.asByteArray (false));
+			}
+			catch (Exception e) {
+				// directory not readable.
+				return null;
+			}
+		}
+	}
+}
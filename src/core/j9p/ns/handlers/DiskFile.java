@@ -39,7 +39,24 @@ import j9p.ns.File;
 import j9p.ns.Permissions;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 ///////////////////////////////////////////////////////////////////////////////
@@ -49,15 +66,567 @@ import java.util.Hashtable;
 * and permissions defined in the namespace, not by the permissions of the
 * actual disk file. The file should be readable (and possibly writable)
 * by the server process; it can't be deleted. </p>
+* <p>All open handles on the same disk file share one file channel; reads
+* and writes use positional I/O, so concurrent requests don't interfere
+* with each other.</p>
+* <p>Large, read-mostly files can be memory-mapped ("mmap" attribute):
+* reads are then served from the mapping. The file is re-mapped if its
+* size changes; the file must not be truncated by other processes while
+* it is mapped.</p>
+* <p>The directory of the file is watched for changes (see <i>DiskMonitor</i>),
+* so the size and modification time of the entry reflect changes made by
+* other processes without checking the file on every request.</p>
+* <p>Writes can be combined in a per-handle buffer ("wbuf" attribute):
+* contiguous writes are collected and written when the buffer is full,
+* after a delay ("wdelay"), on a non-contiguous write or read, on an
+* explicit sync and when the handle is closed. The "fsync" attribute
+* selects when written data is forced to disk: "none" (default),
+* "interval" (every "interval" seconds), "clunk" (when a handle is
+* closed) or "always" (after every write).</p>
+* <p>Sequential reads on a handle can be served from data read ahead in
+* the background ("readahead" attribute: number of read-sized chunks).</p>
+* <p>Reads can be served from the server-wide <i>BlockCache</i> ("blockcache"
+* attribute). Every write to the file (and every external change) creates
+* a new content version, so cached blocks of older versions are never
+* used again. External changes are only noticed if the file is watched,
+* so unwatched files are not cached.</p>
 * 
 * @author Bernd R. Fix   >Y<
 * @version 1.0
 */
 public class DiskFile extends File {
 	
+	//=================================================================
+	/**
+	 * <p>Shared channels of opened disk files (by canonical path).</p>
+	 */
+	private static Hashtable<String,SharedChannel> channels = new Hashtable<String,SharedChannel>();
+	/**
+	 * <p>Size of a mapped segment (a single mapping is limited to 2GB).</p>
+	 */
+	private static final long SEGMENT_SIZE = 1L << 30;
+	/*
+	 * Policies for forcing data to disk.
+	 */
+	public static final int SYNC_NONE		= 0;	// never (left to OS)
+	public static final int SYNC_INTERVAL	= 1;	// periodically
+	public static final int SYNC_CLUNK		= 2;	// when a handle is closed
+	public static final int SYNC_ALWAYS		= 3;	// after every write
+	/**
+	 * <p>Timer for delayed writes and periodic syncs.</p>
+	 */
+	private static Timer timer = null;
+	/**
+	 * <p>Background threads for read-ahead.</p>
+	 */
+	private static ExecutorService pool = null;
+	/**
+	 * <p>Number of background threads for read-ahead.</p>
+	 */
+	private static final int POOL_SIZE = 4;
+	/**
+	 * <p>Source of (server-wide unique) content versions.</p>
+	 */
+	private static AtomicInteger generations = new AtomicInteger (0);
+
+	//=================================================================
+	/**
+	 * <p>Memory-mapped (read-only) view of a disk file with a fixed
+	 * size. Files larger than a segment are mapped in multiple
+	 * segments; if the size of the file changes, only the segments
+	 * at the end of the file are mapped again.</p>
+	 */
+	protected static class Mapping {
+
+		//-------------------------------------------------------------
+		/*
+		 * Attributes:
+		 */
+		final long					size;		// mapped size
+		final MappedByteBuffer[]	segments;	// mapped segments
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>Map file content. Complete segments of a previous mapping
+		 * of the file are re-used.</p>
+		 * @param fc FileChannel - file channel
+		 * @param size long - size of file
+		 * @param prev Mapping - previous mapping (or null)
+		 * @throws IOException - mapping failed
+		 */
+		Mapping (FileChannel fc, long size, Mapping prev) throws IOException {
+			this.size = size;
+			int count = (int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+			segments = new MappedByteBuffer [count];
+			int keep = 0;
+			if (prev != null) {
+				keep = (int) Math.min (count, Math.min (prev.size, size) / SEGMENT_SIZE);
+				System.arraycopy (prev.segments, 0, segments, 0, keep);
+			}
+			for (int n = keep; n < count; n++) {
+				long pos = n * SEGMENT_SIZE;
+				segments[n] = fc.map (FileChannel.MapMode.READ_ONLY, pos, Math.min (SEGMENT_SIZE, size - pos));
+			}
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>Read mapped content at given position.</p>
+		 * @param res byte[] - buffer to be filled
+		 * @param pos long - file position
+		 * @return int - number of bytes read (-1 at end of file)
+		 */
+		int read (byte[] res, long pos) {
+			if (pos >= size)
+				return -1;
+			int count = (int) Math.min (res.length, size - pos);
+			int done = 0;
+			while (done < count) {
+				// copy from (duplicate of) segment.
+				long ofs = pos + done;
+				ByteBuffer seg = segments[(int) (ofs / SEGMENT_SIZE)].duplicate();
+				seg.position ((int) (ofs % SEGMENT_SIZE));
+				int num = Math.min (count - done, seg.remaining());
+				seg.get (res, done, num);
+				done += num;
+			}
+			return count;
+		}
+	}
+
+	//=================================================================
+	/**
+	 * <p>File channel shared by all handles on the same disk file.
+	 * The channel is closed when the last handle is released.</p>
+	 * <p>A file channel is closed if a thread is interrupted during
+	 * an I/O operation on it (flushed request); the channel is then
+	 * re-opened for the other users.</p>
+	 */
+	protected static class SharedChannel {
+
+		//-------------------------------------------------------------
+		/*
+		 * Attributes:
+		 */
+		String				path;			// canonical path of file
+		boolean				writable;		// opened for read/write?
+		volatile int		refs = 0;		// number of references
+		volatile FileChannel channel;		// file channel
+		volatile long		size;			// (last known) file size
+		volatile Mapping	map = null;		// memory-mapped content
+		volatile boolean	dirty = false;	// written since last sync?
+		TimerTask			syncTask = null;// periodic sync
+		volatile int		generation = generations.incrementAndGet();	// content version
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>Get a shared channel for a disk file.</p>
+		 * @param f java.io.File - disk file
+		 * @param forWrite boolean - write access required?
+		 * @return SharedChannel - shared file channel
+		 * @throws IOException - file can't be opened
+		 */
+		static SharedChannel acquire (java.io.File f, boolean forWrite) throws IOException {
+			String path = f.getCanonicalPath();
+			synchronized (channels) {
+				SharedChannel sc = channels.get (path);
+				if (sc == null) {
+					sc = new SharedChannel();
+					sc.path = path;
+					// open read/write if possible, so readers and
+					// writers can use the same channel.
+					sc.writable = f.canWrite();
+					sc.channel = open (path, sc.writable);
+					channels.put (path, sc);
+				}
+				if (forWrite && !sc.writable)
+					throw new IOException ("file not writable: " + path);
+				// file could have been changed by other processes.
+				sc.size = sc.channel.size();
+				sc.refs++;
+				return sc;
+			}
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>Release reference to the shared channel.</p>
+		 */
+		void release () {
+			synchronized (channels) {
+				if (--refs > 0)
+					return;
+				channels.remove (path);
+				try {
+					// final sync for periodic syncs.
+					if (syncTask != null) {
+						syncTask.cancel();
+						if (dirty)
+							force();
+					}
+					channel.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>Re-open the channel after it was closed by an interrupted
+		 * operation (if not done by another thread already).</p>
+		 * @param old FileChannel - closed channel
+		 * @throws IOException - file can't be opened
+		 */
+		synchronized void reopen (FileChannel old) throws IOException {
+			// don't re-open released channels.
+			if (refs <= 0)
+				throw new ClosedChannelException();
+			if (channel == old)
+				channel = open (path, writable);
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>Open file channel.</p>
+		 * @param path String - path to file
+		 * @param writable boolean - open for read/write?
+		 * @return FileChannel - opened channel
+		 * @throws IOException - file can't be opened
+		 */
+		private static FileChannel open (String path, boolean writable) throws IOException {
+			return new RandomAccessFile (path, writable ? "rw" : "r").getChannel();
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>Read from file at given position.</p>
+		 * @param buf ByteBuffer - buffer to be filled
+		 * @param pos long - file position
+		 * @return int - number of bytes read (-1 at end of file)
+		 * @throws IOException - read failed
+		 */
+		int read (ByteBuffer buf, long pos) throws IOException {
+			int count = 0;
+			while (buf.hasRemaining()) {
+				FileChannel fc = channel;
+				int num;
+				try {
+					num = fc.read (buf, pos + count);
+				}
+				catch (ClosedChannelException e) {
+					// flushed operation: don't retry.
+					if (Thread.currentThread().isInterrupted())
+						throw e;
+					reopen (fc);
+					continue;
+				}
+				if (num < 0)
+					return (count == 0 ? -1 : count);
+				count += num;
+			}
+			return count;
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>Read from file at given position; blocks of the file
+		 * are served from (and stored in) the block cache.</p>
+		 * @param res byte[] - buffer to be filled
+		 * @param pos long - file position
+		 * @return int - number of bytes read (-1 at end of file)
+		 * @throws IOException - read failed
+		 */
+		int readBlocks (byte[] res, long pos) throws IOException {
+			BlockCache bc = BlockCache.getInstance();
+			if (bc == null)
+				return read (ByteBuffer.wrap (res), pos);
+			int count = 0;
+			byte[] blk = null;
+			while (count < res.length) {
+				long p = pos + count;
+				long block = p / BlockCache.BLOCK_SIZE;
+				int from = (int) (p % BlockCache.BLOCK_SIZE);
+				int want = res.length - count;
+				// version must be read before the file is accessed.
+				int gen = generation;
+				int len = bc.get (path, gen, block, res, count, from, want);
+				if (len < 0) {
+					// read block from file and cache it.
+					if (blk == null)
+						blk = new byte [BlockCache.BLOCK_SIZE];
+					len = Math.max (0, read (ByteBuffer.wrap (blk), block * BlockCache.BLOCK_SIZE));
+					if (len > 0)
+						bc.put (path, gen, block, blk, len);
+					if (len > from)
+						System.arraycopy (blk, from, res, count, Math.min (want, len - from));
+				}
+				int num = Math.min (want, len - from);
+				if (num <= 0)
+					break;
+				count += num;
+				// end of file reached?
+				if (len < BlockCache.BLOCK_SIZE)
+					break;
+			}
+			return (count == 0 ? -1 : count);
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>The content of the file has changed: start a new
+		 * content version (cached blocks of older versions are
+		 * not used any more).</p>
+		 */
+		void changed () {
+			generation = generations.incrementAndGet();
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>Get memory mapping of the file; the file is (re-)mapped
+		 * if its size has changed.</p>
+		 * @param len long - current size of file
+		 * @return Mapping - mapped file content
+		 * @throws IOException - mapping failed
+		 */
+		Mapping mapping (long len) throws IOException {
+			Mapping m = map;
+			if (m != null && m.size == len)
+				return m;
+			synchronized (this) {
+				m = map;
+				if (m == null || m.size != len) {
+					FileChannel fc = channel;
+					try {
+						m = new Mapping (fc, len, m);
+					}
+					catch (ClosedChannelException e) {
+						// flushed operation: don't retry.
+						if (Thread.currentThread().isInterrupted())
+							throw e;
+						reopen (fc);
+						m = new Mapping (channel, len, m);
+					}
+					map = m;
+				}
+				return m;
+			}
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>Read from the memory-mapped file at given position. The
+		 * mapping follows the current size of the file (it could have
+		 * been changed by another process); if the mapped content can't
+		 * be read, the data is read from the file channel instead.</p>
+		 * @param res byte[] - buffer to be filled
+		 * @param pos long - file position
+		 * @return int - number of bytes read (-1 at end of file)
+		 * @throws IOException - read failed
+		 */
+		int readMapped (byte[] res, long pos) throws IOException {
+			Mapping m = null;
+			try {
+				m = mapping (channel.size());
+			}
+			catch (ClosedChannelException e) {
+				// flushed operation: don't retry.
+				if (Thread.currentThread().isInterrupted())
+					throw e;
+			}
+			catch (IOException e) {
+				// file can't be mapped.
+			}
+			if (m != null) {
+				try {
+					return m.read (res, pos);
+				}
+				catch (InternalError e) {
+					// file truncated while reading (access to mapped
+					// content beyond the end of file).
+					map = null;
+				}
+			}
+			return read (ByteBuffer.wrap (res), pos);
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>Write to file at given position.</p>
+		 * @param buf ByteBuffer - data to be written
+		 * @param pos long - file position
+		 * @return long - new size of file
+		 * @throws IOException - write failed
+		 */
+		long write (ByteBuffer buf, long pos) throws IOException {
+			int count = 0;
+			while (buf.hasRemaining()) {
+				FileChannel fc = channel;
+				try {
+					count += fc.write (buf, pos + count);
+				}
+				catch (ClosedChannelException e) {
+					// flushed operation: don't retry.
+					if (Thread.currentThread().isInterrupted())
+						throw e;
+					reopen (fc);
+				}
+			}
+			dirty = true;
+			changed();
+			// keep track of file size.
+			long end = pos + count;
+			synchronized (this) {
+				if (end > size)
+					size = end;
+				return size;
+			}
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>Force written data to disk.</p>
+		 * @throws IOException - operation failed
+		 */
+		void force () throws IOException {
+			dirty = false;
+			FileChannel fc = channel;
+			try {
+				fc.force (false);
+			}
+			catch (ClosedChannelException e) {
+				// flushed operation: don't retry.
+				if (Thread.currentThread().isInterrupted())
+					throw e;
+				reopen (fc);
+				channel.force (false);
+			}
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>Start periodic syncs of the file (if not running).</p>
+		 * @param secs int - sync interval in seconds
+		 */
+		synchronized void startSync (int secs) {
+			if (syncTask != null)
+				return;
+			syncTask = new TimerTask() {
+				public void run() {
+					if (!dirty)
+						return;
+					try {
+						force();
+					} catch (IOException e) {
+						// channel closed.
+					}
+				}
+			};
+			getTimer().schedule (syncTask, secs * 1000L, secs * 1000L);
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>Truncate file to zero size.</p>
+		 * @throws IOException - operation failed
+		 */
+		void truncate () throws IOException {
+			channel.truncate (0);
+			changed();
+			size = 0;
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>Get size of file.</p>
+		 * @return long - file size
+		 */
+		long size () {
+			return size;
+		}
+	}
+
+	//=================================================================
+	/**
+	 * <p>Change listener for the directory of a disk file. The
+	 * listener only keeps a weak reference to the file entry.</p>
+	 */
+	private static class FileWatch implements DiskMonitor.Listener {
+
+		//-------------------------------------------------------------
+		/*
+		 * Attributes:
+		 */
+		WeakReference<DiskFile>	ref;	// watched file entry
+		String					name;	// name of file in directory
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>An entry in the directory has changed.</p>
+		 * @param changed String - name of changed entry (or null)
+		 * @return boolean - keep listening?
+		 */
+		public boolean changed (String changed) {
+			DiskFile f = ref.get();
+			if (f == null)
+				return false;
+			if (changed == null || changed.equals (name))
+				f.update();
+			return true;
+		}
+	}
+
+	//=================================================================
+	/**
+	 * <p>Data read ahead in the background.</p>
+	 */
+	private static class Prefetch implements Runnable {
+
+		//-------------------------------------------------------------
+		/*
+		 * Attributes:
+		 */
+		SharedChannel	file;			// shared file channel
+		long			ofs;			// file offset of data
+		byte[]			data;			// data buffer
+		int				len = 0;		// number of bytes read
+		int				version;		// entry version at start
+		boolean			done = false;	// read completed?
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>Read data (background thread).</p>
+		 */
+		public void run () {
+			int num = -1;
+			try {
+				num = file.read (ByteBuffer.wrap (data), ofs);
+			} catch (IOException e) {
+				// handle released.
+			}
+			synchronized (this) {
+				len = Math.max (num, 0);
+				done = true;
+				notifyAll();
+			}
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>Wait for read to complete.</p>
+		 * @return boolean - data available (false if interrupted)
+		 */
+		synchronized boolean await () {
+			try {
+				while (!done)
+					wait();
+				return true;
+			}
+			catch (InterruptedException e) {
+				// operation flushed.
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>Get file offset after the prefetched range.</p>
+		 * @return long - end offset
+		 */
+		long end () {
+			return ofs + data.length;
+		}
+	}
+
 	//=================================================================
 	/*
-	 * <p>Disk file handle.</p>
+	 * <p>Disk file handle (with optional write buffer).</p>
 	 */
 	private static class DiskHandle extends Handle {
 
@@ -65,19 +634,156 @@ public class DiskFile extends File {
 		/*
 		 * Attributes:
 		 */
-		RandomAccessFile file = null;			// opened file
+		SharedChannel file = null;			// shared file channel
+		int syncMode = SYNC_NONE;			// sync policy
+		byte[] wbuf = null;					// write buffer
+		long wbufOfs = 0;					// file offset of buffer
+		int wbufLen = 0;					// number of buffered bytes
+		int wdelay = 0;						// max. delay of buffered writes (ms)
+		TimerTask flusher = null;			// pending delayed write
+		int raChunks = 0;					// number of chunks read ahead
+		LinkedList<Prefetch> ahead = null;	// prefetched data
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>Serve a read from prefetched data and read ahead for
+		 * sequential access.</p>
+		 * @param version int - current version of file entry
+		 * @param offset long - file offset
+		 * @param size int - number of bytes to be read
+		 * @return byte[] - read data (or null if not prefetched)
+		 */
+		synchronized byte[] readAhead (int version, long offset, int size) {
+			if (ahead == null)
+				return null;
+			boolean sequential = (offset == lastReadOfs + lastReadNum && lastReadNum > 0);
+
+			// drop outdated or skipped data.
+			Iterator<Prefetch> it = ahead.iterator();
+			while (it.hasNext()) {
+				Prefetch pf = it.next();
+				if (pf.version != version || pf.end() <= offset || pf.ofs > offset + size)
+					it.remove();
+			}
+			// serve from prefetched data.
+			byte[] res = null;
+			Prefetch pf = ahead.peekFirst();
+			if (pf != null && pf.ofs <= offset) {
+				if (!pf.await())
+					return null;
+				long avail = pf.ofs + pf.len - offset;
+				// partial data only at end of file.
+				if (avail >= size || (avail > 0 && pf.len < pf.data.length)) {
+					int num = (int) Math.min (size, avail);
+					res = new byte [num];
+					System.arraycopy (pf.data, (int) (offset - pf.ofs), res, 0, num);
+					if (offset + num >= pf.end())
+						ahead.removeFirst();
+				}
+			}
+			// read ahead for sequential access.
+			if (sequential && ahead.size() < 2) {
+				Prefetch last = ahead.peekLast();
+				if (last == null || !last.done || last.len == last.data.length) {
+					Prefetch next = new Prefetch();
+					next.file = file;
+					next.ofs = (last == null ? offset + size : last.end());
+					next.data = new byte [size * raChunks];
+					next.version = version;
+					ahead.addLast (next);
+					getPool().execute (next);
+				}
+			}
+			return res;
+		}
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>Write data (through the write buffer).</p>
+		 * @param data byte[] - data to be written
+		 * @param ofs long - file offset
+		 * @param size int - number of bytes
+		 * @return long - new size of file
+		 * @throws IOException - write failed
+		 */
+		synchronized long write (byte[] data, long ofs, int size) throws IOException {
+			if (file == null)
+				throw new IOException ("handle released");
+			if (wbuf != null) {
+				// write buffered data if not contiguous or full.
+				if (wbufLen > 0 && (ofs != wbufOfs + wbufLen || size > wbuf.length - wbufLen))
+					flush();
+				// buffer data.
+				if (size < wbuf.length) {
+					if (wbufLen == 0) {
+						wbufOfs = ofs;
+						schedule();
+					}
+					System.arraycopy (data, 0, wbuf, wbufLen, size);
+					wbufLen += size;
+					return Math.max (file.size(), ofs + size);
+				}
+			}
+			// write data directly.
+			long res = file.write (ByteBuffer.wrap (data, 0, size), ofs);
+			if (syncMode == SYNC_ALWAYS)
+				file.force();
+			return res;
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>Write buffered data to file.</p>
+		 * @throws IOException - write failed
+		 */
+		synchronized void flush () throws IOException {
+			if (flusher != null) {
+				flusher.cancel();
+				flusher = null;
+			}
+			if (wbufLen == 0 || file == null)
+				return;
+			file.write (ByteBuffer.wrap (wbuf, 0, wbufLen), wbufOfs);
+			wbufLen = 0;
+			if (syncMode == SYNC_ALWAYS)
+				file.force();
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>Schedule delayed write of buffered data.</p>
+		 */
+		private void schedule () {
+			if (wdelay <= 0 || flusher != null)
+				return;
+			flusher = new TimerTask() {
+				public void run() {
+					try {
+						flush();
+					} catch (IOException e) {
+						error = e;
+					}
+				}
+			};
+			getTimer().schedule (flusher, wdelay);
+		}
 		//-------------------------------------------------------------
 		/**
-		 * <p>Release handle (close file).</p>
+		 * <p>Release handle (write buffered data and drop
+		 * reference to file). A failed write is kept as error
+		 * of the handle.</p>
 		 */
-		public void release () {
-			// close disk file.
+		public synchronized void release () {
+			if (file == null)
+				return;
+			ahead = null;
 			try {
-				if (file != null)
-					file.close();
+				flush();
+				if (syncMode == SYNC_CLUNK && file.dirty)
+					file.force();
 			} catch (IOException e) {
-				e.printStackTrace();
+				error = e;
 			}
+			file.release();
+			file = null;
 		}
 	}
 
@@ -86,7 +792,16 @@ public class DiskFile extends File {
 	 * Attributes:
 	 */
 	protected String fileName = null;		// name of disk file
-	protected long fileSize = 0;			// size of file
+	protected volatile long fileSize = 0;	// size of file
+	protected boolean mapped = false;		// memory-mapped reads?
+	protected int wbufSize = 0;				// size of write buffer
+	protected int wdelay = 200;				// max. delay of buffered writes (ms)
+	protected int syncMode = SYNC_NONE;		// sync policy
+	protected int syncInterval = 5;			// sync interval (seconds)
+	protected int readAhead = 0;			// number of chunks read ahead
+	protected boolean cached = false;		// reads through block cache?
+	private volatile SharedChannel shared;	// last used shared channel
+	private volatile long lastModified = 0;	// modification time of file (ms)
 
 	//=================================================================
 	//	Constructors.
@@ -117,12 +832,98 @@ public class DiskFile extends File {
 	 */
 	public Process startHandler (Hashtable<String,String> p) {
 
-		// get maximum size of logical file.
+		// get referenced disk file and access options.
 		fileName = p.get ("ref");
 		fileSize = new java.io.File(fileName).length();
+		lastModified = new java.io.File(fileName).lastModified();
+		mapped = "true".equals (p.get ("mmap"));
+		// external changes of unwatched files are not noticed: don't
+		// cache their content ("parent": watched by the directory).
+		String watch = p.get ("watch");
+		cached = !mapped && "true".equals (p.get ("blockcache")) && !"false".equals (watch);
+
+		// get write buffering and sync policy.
+		String val = p.get ("wbuf");
+		if (val != null)
+			wbufSize = Integer.parseInt (val);
+		val = p.get ("wdelay");
+		if (val != null)
+			wdelay = Integer.parseInt (val);
+		val = p.get ("interval");
+		if (val != null)
+			syncInterval = Math.max (1, Integer.parseInt (val));
+		val = p.get ("readahead");
+		if (val != null)
+			readAhead = Integer.parseInt (val);
+		val = p.get ("fsync");
+		if ("interval".equals (val))
+			syncMode = SYNC_INTERVAL;
+		else if ("clunk".equals (val))
+			syncMode = SYNC_CLUNK;
+		else if ("always".equals (val))
+			syncMode = SYNC_ALWAYS;
+
+		// watch directory of file for changes.
+		if (fileName != null && !"false".equals (watch) && !"parent".equals (watch)) {
+			Path path = Paths.get (fileName).toAbsolutePath();
+			FileWatch w = new FileWatch();
+			w.ref = new WeakReference<DiskFile> (this);
+			w.name = path.getFileName().toString();
+			DiskMonitor.watch (path.getParent(), w);
+		}
 		return null;
 	}
 	
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Update size and modification time of the entry from the
+	 * attributes of the file.</p>
+	 * @param attrs BasicFileAttributes - file attributes
+	 */
+	void refresh (BasicFileAttributes attrs) {
+		long oldSize = fileSize;
+		long oldModified = lastModified;
+		fileSize = attrs.size();
+		lastModified = attrs.lastModifiedTime().toMillis();
+		int mtime = (int) (lastModified / 1000);
+		SharedChannel sc = shared;
+		if (sc != null) {
+			sc.size = fileSize;
+			// cached content is outdated (a rewrite can happen within
+			// the same second: compare milliseconds).
+			if (fileSize != oldSize || lastModified != oldModified)
+				sc.changed();
+		}
+		synchronized (this) {
+			if (stat.mtime == mtime)
+				return;
+			Attributes attr = stat.copy();
+			attr.mtime = mtime;
+			attr.version++;
+			stat = attr;
+		}
+	}
+	
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Update size and modification time of the entry from the
+	 * filesystem (file has changed).</p>
+	 */
+	void update () {
+		// the file was changed by another process (even if the
+		// size and modification time are unchanged).
+		SharedChannel sc = shared;
+		if (sc != null)
+			sc.changed();
+		try {
+			refresh (Files.readAttributes (Paths.get (fileName), BasicFileAttributes.class));
+		}
+		catch (IOException e) {
+			// file removed.
+			fileSize = 0;
+		}
+	}
+
 	//=================================================================
 	//	abstract methods for read, write and remove
 	//=================================================================
@@ -142,16 +943,18 @@ public class DiskFile extends File {
 			// open failed on basic level
 			return hdl;
 
-		// determine access mode
-		String fMode = "r";
-		if (hdl.forWrite) fMode = "rw";
-		
 		// check access to open physical file
 		java.io.File f = new java.io.File (fileName);
 		if ((hdl.forRead && !f.canRead()) || (hdl.forWrite && !f.canWrite())) {
 			// overwrite permission if the server
 			// can't access the file. 
-			inUse--;
+			release();
+			hdl.rc = Handle.RC_NO_PERMISSION;
+			return hdl;
+		}
+		// only writers can truncate the file.
+		if ((mode & Permissions.OTRUNC) != 0 && !hdl.forWrite) {
+			release();
 			hdl.rc = Handle.RC_NO_PERMISSION;
 			return hdl;
 		}
@@ -162,15 +965,33 @@ public class DiskFile extends File {
 		dHdl.forWrite = hdl.forWrite;
 		try {
 			dHdl.rc = Handle.RC_OK;
-			dHdl.file = new RandomAccessFile (f, fMode);
+			dHdl.file = SharedChannel.acquire (f, hdl.forWrite);
+			dHdl.syncMode = syncMode;
+			if (readAhead > 0 && !mapped) {
+				dHdl.raChunks = readAhead;
+				dHdl.ahead = new LinkedList<Prefetch>();
+			}
+			if (hdl.forWrite) {
+				if (wbufSize > 0)
+					dHdl.wbuf = new byte [wbufSize];
+				dHdl.wdelay = wdelay;
+				if (syncMode == SYNC_INTERVAL)
+					dHdl.file.startSync (syncInterval);
+			}
 			// truncate file on request
 			if ((mode & Permissions.OTRUNC) != 0)
-				dHdl.file.setLength (0);
-			fileSize = dHdl.file.length();
+				dHdl.file.truncate();
+			fileSize = dHdl.file.size();
+			shared = dHdl.file;
 		}
 		catch (Exception e) {
+			// drop reference to the shared channel.
+			if (dHdl.file != null) {
+				dHdl.file.release();
+				dHdl.file = null;
+			}
 			hdl.rc = Handle.RC_NO_SUCH_FILE;
-			inUse--;
+			release();
 			return hdl;
 		}
 		return dHdl;
@@ -193,18 +1014,35 @@ public class DiskFile extends File {
 		DiskHandle dHdl = (DiskHandle) hdl;
 		
 		// check file access
-		if (!hdl.forRead || dHdl.file == null)
+		SharedChannel file = dHdl.file;
+		if (!hdl.forRead || file == null || dHdl.error != null)
 			return null;
 		
-		// perform read operation
+		// perform (positional) read operation
 		try {
-			// seek to offset position
-			dHdl.file.seek (offset);
-			dHdl.lastReadOfs = offset;
-			
-			// read data
+			// read buffered writes back from file.
+			if (dHdl.wbufLen > 0)
+				dHdl.flush();
+			// serve from read-ahead data.
+			if (dHdl.ahead != null) {
+				byte[] res = dHdl.readAhead (getVersion(), offset, size);
+				if (res != null) {
+					dHdl.lastReadOfs = offset;
+					dHdl.lastReadNum = res.length;
+					return res;
+				}
+				if (Thread.currentThread().isInterrupted())
+					return null;
+			}
 			byte[] res = new byte [size];
-			int num = dHdl.file.read (res);
+			int num;
+			if (mapped)
+				num = file.readMapped (res, offset);
+			else if (cached)
+				num = file.readBlocks (res, offset);
+			else
+				num = file.read (ByteBuffer.wrap (res), offset);
+			dHdl.lastReadOfs = offset;
 			if (num < 0) {
 				dHdl.lastReadNum = 0;
 				return null;
@@ -218,8 +1056,12 @@ public class DiskFile extends File {
 			System.arraycopy (res, 0, resTrunc, 0, num);
 			return resTrunc;
 		}
+		catch (ClosedChannelException e) {
+			// operation flushed.
+			return null;
+		}
 		catch (IOException e) {
-			e.printStackTrace();
+			dHdl.error = e;
 			return null;
 		}
 	}
@@ -242,27 +1084,52 @@ public class DiskFile extends File {
 		DiskHandle dHdl = (DiskHandle) hdl;
 		
 		// check file access
-		if (!hdl.forWrite || dHdl.file == null)
+		SharedChannel file = dHdl.file;
+		if (!hdl.forWrite || file == null || dHdl.error != null)
 			return 0;
 		
-		// perform write operation
+		// perform (positional) write operation
 		try {
-			// seek to offset position
-			dHdl.file.seek (offset);
+			fileSize = dHdl.write (data, offset, size);
 			dHdl.lastWriteOfs = offset;
-			
-			// write data
-			dHdl.file.write (data, 0, size);
-			fileSize = dHdl.file.length();
 			dHdl.lastWriteNum = size;
 			return size;
 		}
+		catch (ClosedChannelException e) {
+			// operation flushed.
+			return 0;
+		}
 		catch (IOException e) {
-			e.printStackTrace();
+			dHdl.error = e;
 			return 0;
 		}
 	}
 	
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Write buffered data of a handle and force written data
+	 * to disk. Fails if an earlier (delayed) write has failed.</p>
+	 * @param hdl Handle - handle to opened file
+	 * @return boolean - successful operation?
+	 */
+	public boolean sync (Handle hdl) {
+		if (!(hdl instanceof DiskHandle))
+			return true;
+		DiskHandle dHdl = (DiskHandle) hdl;
+		SharedChannel file = dHdl.file;
+		if (file == null || dHdl.error != null)
+			return false;
+		try {
+			dHdl.flush();
+			file.force();
+			return true;
+		}
+		catch (IOException e) {
+			dHdl.error = e;
+			return false;
+		}
+	}
+	
 	//=================================================================
 	/**
 	 * <p>Get size of entry.</p>
@@ -272,4 +1139,32 @@ public class DiskFile extends File {
 		// return size of underlying disk file
 		return fileSize;
 	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get the (shared) thread pool for read-ahead.</p>
+	 * @return ExecutorService - thread pool
+	 */
+	private static synchronized ExecutorService getPool () {
+		if (pool == null)
+			pool = Executors.newFixedThreadPool (POOL_SIZE, new ThreadFactory() {
+				public Thread newThread (Runnable r) {
+					Thread t = new Thread (r, "DiskFile-IO");
+					t.setDaemon (true);
+					return t;
+				}
+			});
+		return pool;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get the (shared) timer for delayed writes and syncs.</p>
+	 * @return Timer - timer
+	 */
+	private static synchronized Timer getTimer () {
+		if (timer == null)
+			timer = new Timer ("DiskFile", true);
+		return timer;
+	}
 }
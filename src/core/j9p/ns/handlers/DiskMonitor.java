@@ -0,0 +1,252 @@
+
+//******************************************************************
+//*   PGMID.        DISK CHANGE MONITOR.                           *
+//*   AUTHOR.       BERND R. FIX   >Y<                             *
+//*   DATE WRITTEN. 26/10/18.                                      *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.      *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE    *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.       *
+//******************************************************************
+//*                                                                *
+//*  StyxLib: Java-based Styx server framework                     *
+//*                                                                *
+//*  Copyright (C) 2009-2012, Bernd R. Fix                         *
+//*                                                                *
+//*  This program is free software; you can redistribute it and/or *
+//*  modify it under the terms of the GNU Lesser General Public    *
+//*  License (LGPL) as published by the Free Software Foundation;  *
+//*  either version 3 of the License, or (at your option) any      *
+//*  later version.                                                *
+//*                                                                *
+//*  This program is distributed in the hope that it will be use-  *
+//*  ful, but WITHOUT ANY WARRANTY; without even the implied       *
+//*  warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR       *
+//*  PURPOSE. See the GNU General Public License for more details. *
+//*                                                                *
+//*  You should have received a copy of the GNU General Public     *
+//*  Licenses along with this program; if not, see                 *
+//*  <http://www.gnu.org/licenses/>.                               *
+//*                                                                *
+//******************************************************************
+
+package j9p.ns.handlers;
+
+///////////////////////////////////////////////////////////////////////////////
+//import external declarations.
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Hashtable;
+import java.util.Vector;
+
+
+///////////////////////////////////////////////////////////////////////////////
+/**
+ * <p>The <b>DiskMonitor</b> watches directories in the filesystem of the
+ * server for changes (made by the server or by other processes) and
+ * notifies the registered listeners, so disk-based entries can update
+ * their attributes without checking the filesystem on every request.</p>
+ * <p>All directories are watched by a single background thread.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public class DiskMonitor implements Runnable {
+
+	//=================================================================
+	/**
+	 * <p>Inner interface for change listeners.</p>
+	 */
+	public static interface Listener {
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>An entry in a watched directory has changed (created,
+		 * modified or removed).</p>
+		 * @param name String - name of changed entry (or null if
+		 * events were lost and all entries could have changed)
+		 * @return boolean - keep listening?
+		 */
+		boolean changed (String name);
+	}
+
+	//=================================================================
+	/**
+	 * <p>Watched directory.</p>
+	 */
+	private static class Watched {
+
+		//-------------------------------------------------------------
+		/*
+		 * Attributes:
+		 */
+		Path				dir;		// watched directory
+		WatchKey			key;		// registration with watch service
+		Vector<Listener>	listeners;	// registered listeners
+	}
+
+	//=================================================================
+	/**
+	 * <p>Singleton instance (started on first use).</p>
+	 */
+	private static DiskMonitor instance = null;
+
+	//=================================================================
+	/*
+	 * Attributes:
+	 */
+	private WatchService service;						// watch service
+	private Hashtable<Path,Watched> dirs;				// watched directories
+	private Hashtable<WatchKey,Watched> keys;			// registered keys
+
+	//=================================================================
+	/**
+	 * <p>Instantiate a new monitor.</p>
+	 * @throws IOException - watch service not available
+	 */
+	private DiskMonitor () throws IOException {
+		service = FileSystems.getDefault().newWatchService();
+		dirs = new Hashtable<Path,Watched>();
+		keys = new Hashtable<WatchKey,Watched>();
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get the monitor instance (start monitor thread).</p>
+	 * @return DiskMonitor - monitor (or null if not available)
+	 */
+	private static synchronized DiskMonitor getInstance () {
+		if (instance == null) {
+			try {
+				instance = new DiskMonitor();
+			}
+			catch (IOException e) {
+				System.err.println ("Disk monitor not available: " + e.getMessage());
+				return null;
+			}
+			Thread t = new Thread (instance, "DiskMonitor");
+			t.setDaemon (true);
+			t.start();
+		}
+		return instance;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Watch a directory for changes.</p>
+	 * @param dir Path - directory to be watched
+	 * @param l Listener - change listener
+	 * @return boolean - directory watched?
+	 */
+	public static boolean watch (Path dir, Listener l) {
+		DiskMonitor mon = getInstance();
+		if (mon == null)
+			return false;
+		dir = dir.toAbsolutePath().normalize();
+		synchronized (mon) {
+			Watched w = mon.dirs.get (dir);
+			if (w == null) {
+				w = new Watched();
+				w.dir = dir;
+				w.listeners = new Vector<Listener>();
+				try {
+					w.key = dir.register (mon.service,
+						StandardWatchEventKinds.ENTRY_CREATE,
+						StandardWatchEventKinds.ENTRY_DELETE,
+						StandardWatchEventKinds.ENTRY_MODIFY);
+				}
+				catch (IOException e) {
+					return false;
+				}
+				mon.dirs.put (dir, w);
+				mon.keys.put (w.key, w);
+			}
+			w.listeners.add (l);
+		}
+		return true;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Stop watching a directory for a listener.</p>
+	 * @param dir Path - watched directory
+	 * @param l Listener - change listener
+	 */
+	public static void unwatch (Path dir, Listener l) {
+		DiskMonitor mon = getInstance();
+		if (mon == null)
+			return;
+		dir = dir.toAbsolutePath().normalize();
+		synchronized (mon) {
+			Watched w = mon.dirs.get (dir);
+			if (w != null && w.listeners.remove (l) && w.listeners.isEmpty())
+				mon.drop (w);
+		}
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Drop a watched directory.</p>
+	 * @param w Watched - watched directory
+	 */
+	private synchronized void drop (Watched w) {
+		w.key.cancel();
+		dirs.remove (w.dir);
+		keys.remove (w.key);
+	}
+
+	//=================================================================
+	/**
+	 * <p>Monitor thread: dispatch change events to listeners.</p>
+	 */
+	public void run () {
+		while (true) {
+			// wait for next change.
+			WatchKey key;
+			try {
+				key = service.take();
+			}
+			catch (InterruptedException e) {
+				return;
+			}
+			Watched w = keys.get (key);
+			if (w == null) {
+				key.cancel();
+				continue;
+			}
+			// collect names of changed entries.
+			Vector<String> names = new Vector<String>();
+			for (WatchEvent<?> ev : key.pollEvents()) {
+				String name = null;
+				if (ev.kind() != StandardWatchEventKinds.OVERFLOW)
+					name = ev.context().toString();
+				if (!names.contains (name))
+					names.add (name);
+			}
+			// notify listeners (outside lock).
+			Listener[] list;
+			synchronized (this) {
+				list = w.listeners.toArray (new Listener [w.listeners.size()]);
+			}
+			for (Listener l : list) {
+				boolean keep = true;
+				for (String name : names)
+					keep &= l.changed (name);
+				if (!keep)
+					unwatch (w.dir, l);
+			}
+			// directory removed?
+			if (!key.reset()) {
+				synchronized (this) {
+					if (keys.get (key) == w)
+						drop (w);
+				}
+			}
+		}
+	}
+}
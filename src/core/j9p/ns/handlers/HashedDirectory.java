@@ -0,0 +1,337 @@
+
+//******************************************************************
+//*   PGMID.        HASH-INDEXED NAMESPACE DIRECTORY.              *
+//*   AUTHOR.       BERND R. FIX   >Y<                             *
+//*   DATE WRITTEN. 26/10/18.                                      *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.      *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE    *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.       *
+//******************************************************************
+//*                                                                *
+//*  StyxLib: Java-based Styx server framework                     *
+//*                                                                *
+//*  Copyright (C) 2009-2012, Bernd R. Fix                         *
+//*                                                                *
+//*  This program is free software; you can redistribute it and/or *
+//*  modify it under the terms of the GNU Lesser General Public    *
+//*  License (LGPL) as published by the Free Software Foundation;  *
+//*  either version 3 of the License, or (at your option) any      *
+//*  later version.                                                *
+//*                                                                *
+//*  This program is distributed in the hope that it will be use-  *
+//*  ful, but WITHOUT ANY WARRANTY; without even the implied       *
+//*  warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR       *
+//*  PURPOSE. See the GNU General Public License for more details. *
+//*                                                                *
+//*  You should have received a copy of the GNU General Public     *
+//*  Licenses along with this program; if not, see                 *
+//*  <http://www.gnu.org/licenses/>.                               *
+//*                                                                *
+//******************************************************************
+
+package j9p.ns.handlers;
+
+///////////////////////////////////////////////////////////////////////////////
+//import external declarations.
+
+import java.util.concurrent.ConcurrentHashMap;
+import j9p.ns.Entry;
+import j9p.ns.Permissions;
+
+
+///////////////////////////////////////////////////////////////////////////////
+/**
+ * <p>A <b>HashedDirectory</b> is a logical directory that keeps its
+ * entries in insertion order and maintains a hash index on the entry
+ * names. Lookups by name are constant-time operations, so this handler
+ * is suited for directories with a huge number of entries. Entry names
+ * are unique within the directory: adding an entry with an existing
+ * name fails.</p>
+ * <p>Entries keep their position in the table: a removed entry leaves
+ * a gap (<i>getEntryAt()</i> returns null) until the table is compacted
+ * when more than half of its positions are gaps.</p>
+ * <p>Modifications are serialized; read access (look-up, listing)
+ * works on the last published table and never blocks. A published
+ * table is immutable: removals are recorded with the version of the
+ * table that dropped the entry, so older tables (like the snapshot of
+ * a running listing) still see the entry.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public class HashedDirectory extends LogicalDirectory {
+
+	//=================================================================
+	/**
+	 * <p>Initial capacity of entry table.</p>
+	 */
+	private static final int INITIAL_SIZE = 16;
+
+	//=================================================================
+	/**
+	 * <p>Published state of the entry table. Slots are only written
+	 * before a table referencing them is published; removals are
+	 * stamped with the version of the new table. Tables on the same
+	 * slot array share the removal stamps and the name index.</p>
+	 */
+	protected static final class Table extends Snapshot {
+
+		//-------------------------------------------------------------
+		/*
+		 * Attributes:
+		 */
+		final int[]		removed;	// version that removed the slot (0 = live)
+		final int		version;	// version of table
+		final int		live;		// number of live entries
+		final ConcurrentHashMap<String,Integer> index;	// name-to-slot mapping
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>Instantiate a new table state.</p>
+		 * @param slots Entry[] - entry slots
+		 * @param removed int[] - removal stamps of slots
+		 * @param used int - number of used slots
+		 * @param live int - number of live entries
+		 * @param version int - version of table
+		 * @param index ConcurrentHashMap<String,Integer> - name index
+		 */
+		Table (Entry[] slots, int[] removed, int used, int live, int version, ConcurrentHashMap<String,Integer> index) {
+			super (slots, used);
+			this.removed = removed;
+			this.live = live;
+			this.version = version;
+			this.index = index;
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>Get entry at given position (as of this version).</p>
+		 * @param pos int - position in table
+		 * @return Entry - entry at position (or null if removed)
+		 */
+		Entry get (int pos) {
+			int stamp = removed[pos];
+			return (stamp == 0 || stamp > version ? entries[pos] : null);
+		}
+	}
+
+	//=================================================================
+	/*
+	 * Attributes:
+	 */
+	protected volatile Table table;			// entry table
+
+	//=================================================================
+	/**
+	 * <p>Instantiate a new hashed directory in the namespace.</p>
+	 * @param name String - name of entry
+	 * @param perm Permissions - access permissions for file
+	 * @param device String - mount handler
+	 */
+	public HashedDirectory (String name, Permissions perm, String device) {
+		super (name, perm, device);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Protected constructor for uninitialized entry.</p>
+	 */
+	public HashedDirectory () {
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Initialize object.</p>
+	 */
+	protected void prepare () {
+		super.prepare();
+		table = new Table (new Entry [INITIAL_SIZE], new int [INITIAL_SIZE], 0, 0, 1,
+			new ConcurrentHashMap<String,Integer>());
+	}
+
+	//=================================================================
+	//	Manage list of contained entries.
+	//=================================================================
+	/**
+	 * <p>Get number of positions in this directory (entries and
+	 * gaps left by removed entries).</p>
+	 * @return int - number of directory positions
+	 */
+	public int numEntries () {
+		return table.count;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get indexed entry in directory.</p>
+	 * @param pos int - directory index
+	 * @return Entry - selected entry (or null if removed)
+	 */
+	public Entry getEntryAt (int pos) {
+		Table t = table;
+		if (pos < 0 || pos >= t.count)
+			return null;
+		return t.get (pos);
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get named namespace entry.</p>
+	 * @param name String - name of entry (sub-directory)
+	 * @return Entry - associated namespace entry
+	 */
+	public Entry getEntryByName (String name) {
+		Table t = table;
+		Integer pos = t.index.get (name);
+		if (pos == null || pos >= t.count)
+			return null;
+		Entry e = t.get (pos);
+		return (e != null && name.equals (e.getName()) ? e : null);
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Add entry to directory. The operation fails if an entry
+	 * with the same name already exists.</p>
+	 * @param e Entry - entry to be added
+	 * @return boolean - successful operation
+	 */
+	public boolean add (Entry e) {
+		String name = e.getName();
+		if (name == null)
+			return false;
+		synchronized (this) {
+			// check for duplicate names.
+			Table t = table;
+			if (t.index.containsKey (name))
+				return false;
+
+			// grow (or compact) entry table if required.
+			if (t.count == t.entries.length)
+				t = rebuild (t, Math.max (INITIAL_SIZE, 2 * t.live + 2));
+
+			// append entry and publish new state.
+			t.entries[t.count] = e;
+			table = new Table (t.entries, t.removed, t.count+1, t.live+1, t.version, t.index);
+			t.index.put (name, t.count);
+		}
+		e.setParent (this);
+		setModified();
+		fireEvent (EV_CREATE, e);
+		return true;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Add a set of entries to the directory.</p>
+	 * @param entries Entry[] - entries to be added
+	 * @return boolean - successful operation
+	 */
+	public boolean addAll (Entry[] entries) {
+		boolean rc = true;
+		for (Entry e : entries)
+			rc &= add (e);
+		return rc;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Remove entry from directory. The position of the entry
+	 * becomes a gap; the table is compacted if it gets sparse.</p>
+	 * @param e Entry - entry to be removed
+	 * @return boolean - remove successful?
+	 */
+	public boolean remove (Entry e) {
+		synchronized (this) {
+			// find entry in table.
+			Table t = table;
+			String name = e.getName();
+			Integer pos = t.index.get (name);
+			if (pos == null || t.get (pos) != e)
+				return false;
+
+			// stamp slot with the version of the new table.
+			t.index.remove (name);
+			int version = t.version + 1;
+			t.removed[pos] = version;
+			t = new Table (t.entries, t.removed, t.count, t.live-1, version, t.index);
+			// compact table if more than half of the slots are gaps.
+			if (2 * t.live < t.count) {
+				int size = t.entries.length;
+				while (size > INITIAL_SIZE && 4 * t.live < size)
+					size /= 2;
+				t = rebuild (t, size);
+			}
+			table = t;
+		}
+		setModified();
+		fireEvent (EV_REMOVE, e);
+		return true;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Build a new (unpublished) table with the live entries of a
+	 * table (positions change).</p>
+	 * @param t Table - current table
+	 * @param size int - capacity of new table
+	 * @return Table - compacted table
+	 */
+	private Table rebuild (Table t, int size) {
+		Entry[] slots = new Entry [size];
+		ConcurrentHashMap<String,Integer> index = new ConcurrentHashMap<String,Integer>();
+		int used = 0;
+		for (int n = 0; n < t.count; n++) {
+			Entry e = t.get (n);
+			if (e == null)
+				continue;
+			slots[used] = e;
+			index.put (e.getName(), used++);
+		}
+		return new Table (slots, new int [size], used, used, 1, index);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Check if a contained entry can be renamed and update
+	 * the name index accordingly.</p>
+	 * @param e Entry - entry to be renamed
+	 * @param newName String - new name of entry
+	 * @return boolean - rename allowed?
+	 */
+	protected boolean rename (Entry e, String newName) {
+		synchronized (this) {
+			// check for duplicate names.
+			Table t = table;
+			if (t.index.containsKey (newName))
+				return false;
+			// re-index entry.
+			String oldName = e.getName();
+			Integer pos = t.index.get (oldName);
+			if (pos == null || t.get (pos) != e)
+				return false;
+			t.index.put (newName, pos);
+			t.index.remove (oldName);
+		}
+		setModified();
+		return true;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get the current entries of the directory: the published
+	 * table is immutable and serves as snapshot.</p>
+	 * @return Snapshot - list of entries
+	 */
+	Snapshot entries () {
+		return table;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Allocate a new (empty) entry for a "create" operation.
+	 * Sub-directories are hashed directories themselves.</p>
+	 * @param asDir boolean - allocate a (sub-)directory?
+	 * @param name String - name of entry
+	 * @param perm Permissions - access permissions for entry
+	 * @return Entry - new entry (or null)
+	 */
+	protected Entry newEntry (boolean asDir, String name, Permissions perm) {
+		if (asDir)
+			return new HashedDirectory (name, perm, DEFAULT_DEVICE);
+		return super.newEntry (asDir, name, perm);
+	}
+}
@@ -0,0 +1,378 @@
+
+//******************************************************************
+//*   PGMID.        LAZY (ON-DEMAND) NAMESPACE DIRECTORY.          *
+//*   AUTHOR.       BERND R. FIX   >Y<                             *
+//*   DATE WRITTEN. 26/10/18.                                      *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.      *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE    *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.       *
+//******************************************************************
+//*                                                                *
+//*  StyxLib: Java-based Styx server framework                     *
+//*                                                                *
+//*  Copyright (C) 2009-2012, Bernd R. Fix                         *
+//*                                                                *
+//*  This program is free software; you can redistribute it and/or *
+//*  modify it under the terms of the GNU Lesser General Public    *
+//*  License (LGPL) as published by the Free Software Foundation;  *
+//*  either version 3 of the License, or (at your option) any      *
+//*  later version.                                                *
+//*                                                                *
+//*  This program is distributed in the hope that it will be use-  *
+//*  ful, but WITHOUT ANY WARRANTY; without even the implied       *
+//*  warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR       *
+//*  PURPOSE. See the GNU General Public License for more details. *
+//*                                                                *
+//*  You should have received a copy of the GNU General Public     *
+//*  Licenses along with this program; if not, see                 *
+//*  <http://www.gnu.org/licenses/>.                               *
+//*                                                                *
+//******************************************************************
+
+package j9p.ns.handlers;
+
+///////////////////////////////////////////////////////////////////////////////
+//import external declarations.
+
+import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.Vector;
+import j9p.ns.Directory;
+import j9p.ns.Entry;
+import j9p.ns.Permissions;
+
+
+///////////////////////////////////////////////////////////////////////////////
+/**
+ * <p>A <b>LazyDirectory</b> is a logical directory that builds its
+ * entries on demand: the entries are created by a loader when the
+ * directory is accessed (walked or listed) for the first time.</p>
+ * <p>If an idle time is specified, loaded entries are dropped again if
+ * the directory has not been accessed for that time and no entry in the
+ * loaded subtree is in use (opened or referenced by a fid); the next
+ * access re-loads the entries.
+ * Entries added by other means (configuration, "create") are kept.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public class LazyDirectory extends LogicalDirectory {
+
+	//=================================================================
+	/**
+	 * <p>Inner interface for loader implementations.</p>
+	 * <p>A loader populates a lazy directory by adding entries
+	 * to it. It is called whenever the entries of the directory
+	 * are required and not available (first access or access
+	 * after eviction).</p>
+	 */
+	public static interface Loader {
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>Populate directory with entries.</p>
+		 * @param dir LazyDirectory - directory to be populated
+		 * @param p Hashtable<String,String> - parameter set
+		 */
+		void load (LazyDirectory dir, Hashtable<String,String> p);
+	}
+
+	//=================================================================
+	/**
+	 * <p>Timer for eviction checks (shared by all lazy directories).</p>
+	 */
+	private static Timer sweeper = null;
+
+	//=================================================================
+	/*
+	 * Attributes:
+	 */
+	protected Loader loader = null;							// directory loader
+	protected Hashtable<String,String> params = null;		// parameter set
+	protected long idleTime = 0;							// idle time before eviction (ms)
+	private volatile boolean populated = false;				// entries loaded?
+	private volatile long lastAccess = 0;					// time of last access
+	private boolean loading = false;						// loader running?
+	private Vector<Entry> loaded;							// entries added by loader
+	private TimerTask evictor = null;						// pending eviction check
+
+	//=================================================================
+	/**
+	 * <p>Instantiate a new lazy directory in the namespace.</p>
+	 * @param name String - name of entry
+	 * @param perm Permissions - access permissions for file
+	 * @param device String - mount handler
+	 * @param loader Loader - directory loader
+	 * @param idle int - idle time before eviction in seconds (0 = never)
+	 */
+	public LazyDirectory (String name, Permissions perm, String device, Loader loader, int idle) {
+		super (name, perm, device);
+		this.loader = loader;
+		this.idleTime = idle * 1000L;
+		this.params = new Hashtable<String,String>();
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Protected constructor for uninitialized entry.</p>
+	 */
+	public LazyDirectory () {
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Initialize object.</p>
+	 */
+	protected void prepare () {
+		super.prepare();
+		loaded = new Vector<Entry>();
+	}
+
+	//=================================================================
+	/**
+	 * <p>Set loader for the directory. The "loader" attribute
+	 * references an implementation of the Loader interface;
+	 * the optional "idle" attribute specifies the idle time
+	 * (in seconds) before loaded entries are dropped.</p>
+	 * @param p Hashtable<String,String> - parameter set
+	 * @return Process - started thread (or null)
+	 */
+	public Process startHandler (Hashtable<String,String> p) {
+		// save parameters
+		params = p;
+
+		// get idle time.
+		String idle = p.get ("idle");
+		if (idle != null)
+			idleTime = Integer.parseInt (idle) * 1000L;
+
+		// instantiate loader.
+		String type = p.get ("loader");
+		if (type != null) {
+			try {
+				Class<?> cl = Class.forName (type);
+				loader = (Loader) cl.newInstance();
+			} catch (Exception e) {
+				System.err.println (e.getMessage());
+			}
+		}
+		return null;
+	}
+
+	//=================================================================
+	//	Manage list of contained entries.
+	//=================================================================
+	/**
+	 * <p>Check if the entries of the directory are available.</p>
+	 * @return boolean - entries available?
+	 */
+	public boolean isPopulated () {
+		return populated;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get number of entries in this directory.</p>
+	 * @return int - number of directory entries
+	 */
+	public int numEntries () {
+		materialize();
+		return super.numEntries();
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get indexed entry in directory.</p>
+	 * @param pos int - directory index
+	 * @return Entry - selected entry
+	 */
+	public Entry getEntryAt (int pos) {
+		materialize();
+		return super.getEntryAt (pos);
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get named namespace entry.</p>
+	 * @param name String - name of entry (sub-directory)
+	 * @return Entry - associated namespace entry
+	 */
+	public Entry getEntryByName (String name) {
+		materialize();
+		return super.getEntryByName (name);
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Add entry to directory.</p>
+	 * @param e Entry - entry to be added
+	 * @return boolean - successful operation
+	 */
+	public boolean add (Entry e) {
+		synchronized (this) {
+			if (!super.add (e))
+				return false;
+			// keep track of loaded entries.
+			if (loading)
+				loaded.add (e);
+		}
+		return true;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Add a set of entries to the directory.</p>
+	 * @param entries Entry[] - entries to be added
+	 * @return boolean - successful operation
+	 */
+	public boolean addAll (Entry[] entries) {
+		synchronized (this) {
+			if (!super.addAll (entries))
+				return false;
+			// keep track of loaded entries.
+			if (loading)
+				for (Entry e : entries)
+					loaded.add (e);
+		}
+		return true;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get a snapshot of the directory entries.</p>
+	 * @return Snapshot - list of entries
+	 */
+	protected Snapshot snapshot () {
+		materialize();
+		return super.snapshot();
+	}
+
+	//=================================================================
+	/**
+	 * <p>Make sure the entries of the directory are loaded and
+	 * record the access time.</p>
+	 */
+	protected void materialize () {
+		if (idleTime > 0)
+			lastAccess = System.currentTimeMillis();
+		if (populated)
+			return;
+		synchronized (this) {
+			// the loader accesses its own directory: only the loading
+			// thread can see the flag (it holds the monitor).
+			if (populated || loading)
+				return;
+			// run loader.
+			loading = true;
+			try {
+				load();
+			}
+			finally {
+				loading = false;
+			}
+			populated = true;
+			// schedule eviction check.
+			if (idleTime > 0 && evictor == null) {
+				evictor = new TimerTask() {
+					public void run() {
+						if (evict())
+							cancel();
+					}
+				};
+				getSweeper().schedule (evictor, idleTime, idleTime);
+			}
+		}
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Populate the directory. The default implementation calls
+	 * the loader of the directory; derived classes can override
+	 * this method to add entries themselves.</p>
+	 */
+	protected void load () {
+		if (loader != null)
+			loader.load (this, params);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Drop loaded entries if the directory is idle and no
+	 * loaded entry is in use; listeners are notified about the
+	 * removed entries.</p>
+	 * @return boolean - entries dropped?
+	 */
+	protected boolean evict () {
+		Entry[] dropped;
+		// still in use?
+		if (System.currentTimeMillis() - lastAccess < idleTime)
+			return false;
+		synchronized (this) {
+			if (!populated)
+				return true;
+			for (Entry e : loaded)
+				if (isBusy (e))
+					return false;
+
+			// drop loaded entries.
+			IdentityHashMap<Entry,Entry> drop = new IdentityHashMap<Entry,Entry>();
+			for (Entry e : loaded)
+				drop.put (e, e);
+			Entry[] old = list;
+			Vector<Entry> keep = new Vector<Entry>();
+			for (Entry e : old)
+				if (!drop.containsKey (e))
+					keep.add (e);
+			list = keep.toArray (new Entry [keep.size()]);
+			dropped = loaded.toArray (new Entry [loaded.size()]);
+			loaded.clear();
+			populated = false;
+			evictor = null;
+		}
+		setModified();
+		for (Entry e : dropped)
+			fireEvent (EV_REMOVE, e);
+		return true;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Check if an entry (or any loaded entry below it) is in use:
+	 * opened or referenced by a fid.</p>
+	 * @param e Entry - entry to be checked
+	 * @return boolean - entry (subtree) in use?
+	 */
+	private static boolean isBusy (Entry e) {
+		if (e.isInUse() || e.isReferenced())
+			return true;
+		if (e instanceof Directory) {
+			Directory dir = (Directory) e;
+			if (!dir.isPopulated())
+				return false;
+			// don't record an access on child directories.
+			if (dir instanceof LogicalDirectory) {
+				Snapshot list = ((LogicalDirectory) dir).entries();
+				for (int n = 0; n < list.count; n++) {
+					Entry child = list.get (n);
+					if (child != null && isBusy (child))
+						return true;
+				}
+				return false;
+			}
+			int count = dir.numEntries();
+			for (int n = 0; n < count; n++) {
+				Entry child = dir.getEntryAt (n);
+				if (child != null && isBusy (child))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get the (shared) timer for eviction checks.</p>
+	 * @return Timer - eviction timer
+	 */
+	private static synchronized Timer getSweeper () {
+		if (sweeper == null)
+			sweeper = new Timer ("LazyDirectory", true);
+		return sweeper;
+	}
+}
@@ -34,7 +34,6 @@ package j9p.ns.handlers;
 ///////////////////////////////////////////////////////////////////////////////
 //import external declarations.
 
-import java.util.Vector;
 import j9p.auth.Credential;
 import j9p.ns.Directory;
 import j9p.ns.Entry;
@@ -55,21 +54,146 @@ public class LogicalDirectory extends Directory {
 
 	//=================================================================
 	/**
-	 * <p>List of contained entries.</p>
+	 * <p>Immutable snapshot of the directory entries. Directories
+	 * that keep their entries in a table with gaps (removed entries)
+	 * return <i>null</i> for these positions.</p>
 	 */
-	protected Vector<Entry> list;
+	protected static class Snapshot {
+
+		//-------------------------------------------------------------
+		/*
+		 * Attributes:
+		 */
+		final Entry[]	entries;	// entries of directory
+		final int		count;		// number of positions
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>Instantiate a new snapshot.</p>
+		 * @param entries Entry[] - entries of directory
+		 * @param count int - number of positions
+		 */
+		protected Snapshot (Entry[] entries, int count) {
+			this.entries = entries;
+			this.count = count;
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>Get entry at given position.</p>
+		 * @param pos int - position in snapshot
+		 * @return Entry - entry at position (or null)
+		 */
+		Entry get (int pos) {
+			return entries[pos];
+		}
+	}
+
+	//=================================================================
 	/**
-	 * <p>Directory listing (for "read" operations).</p>
+	 * <p>Directory handle: A handle keeps a snapshot of the directory
+	 * entries taken at the start of a listing and maps entry indices
+	 * to byte offsets in the listing. Stat records are only generated
+	 * for the requested window, so the cost of a listing depends on
+	 * the number of bytes read and not on the size of the directory.
+	 * Concurrent modifications of the directory don't affect a running
+	 * listing.</p>
 	 */
-	protected byte[] dirList;
+	protected static class ListingHandle extends Handle {
+
+		//-------------------------------------------------------------
+		/*
+		 * Attributes:
+		 */
+		Snapshot	entries = null;		// snapshot of directory entries
+		long[]		offsets = null;		// start offsets of entries in listing
+		int			known = 0;			// number of entries with known offset
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>Start a new listing on a snapshot of entries.</p>
+		 * @param list Snapshot - snapshot of directory entries
+		 */
+		void reset (Snapshot list) {
+			entries = list;
+			offsets = new long [Math.min (list.count+1, 64)];
+			offsets[0] = 0;
+			known = 1;
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>Record the start offset of an entry.</p>
+		 * @param idx int - index of entry
+		 * @param ofs long - start offset of entry in listing
+		 */
+		void setOffset (int idx, long ofs) {
+			if (idx < known)
+				return;
+			if (idx == offsets.length) {
+				long[] grown = new long [Math.min (2*offsets.length, entries.count+1)];
+				System.arraycopy (offsets, 0, grown, 0, known);
+				offsets = grown;
+			}
+			offsets[idx] = ofs;
+			known = idx+1;
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>Find the index of the entry that starts at given offset
+		 * in the listing. Offsets beyond the known part of the listing
+		 * are resolved by sizing the stat records in between.</p>
+		 * @param ofs long - offset into listing
+		 * @param fmt AttributeHandler - protocol-specific entry representation
+		 * @return int - index of entry (or -1 if no entry starts at offset)
+		 */
+		int locate (long ofs, AttributeHandler fmt) {
+			// look-up known offsets (binary search)
+			int lo = 0, hi = known-1;
+			while (lo <= hi) {
+				int mid = (lo + hi) >>> 1;
+				long val = offsets[mid];
+				if (val < ofs)
+					lo = mid+1;
+				else if (val > ofs)
+					hi = mid-1;
+				else
+					return mid;
+			}
+			if (lo < known)
+				// offset is not at an entry boundary
+				return -1;
+
+			// size entries up to the requested offset.
+			int idx = known-1;
+			long pos = offsets[idx];
+			while (pos < ofs && idx < entries.count) {
+				Entry e = entries.get (idx);
+				if (e != null)
+					pos += fmt.getStat (e).length;
+				setOffset (++idx, pos);
+			}
+			return (pos == ofs ? idx : -1);
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>Release handle (drop snapshot).</p>
+		 */
+		public void release () {
+			entries = null;
+			offsets = null;
+		}
+	}
+
+	//=================================================================
 	/**
-	 * <p>Modified directory content.</p>
+	 * <p>List of contained entries. The list is never modified in
+	 * place but replaced by a modified copy (copy-on-write), so
+	 * readers can access it without locking.</p>
 	 */
-	protected boolean dirty;
+	protected volatile Entry[] list;
 	/**
-	 * <p>Directory listing in use?</p>
+	 * <p>Shared list of empty directories.</p>
 	 */
-	protected boolean inUse;
+	protected static final Entry[] EMPTY = new Entry [0];
 	
 	//=================================================================
 	/**
@@ -96,10 +220,7 @@ public class LogicalDirectory extends Directory {
 	 * <p>Initialize object.</p>
 	 */
 	protected void prepare () {
-		list = new Vector<Entry>();
-		dirList = null;
-		dirty = true;
-		inUse = false;
+		list = EMPTY;
 	}
 	
 	//=================================================================
@@ -110,7 +231,7 @@ public class LogicalDirectory extends Directory {
 	public boolean remove () {
 		
 		// can't delete a directory that is not empty.
-		if (list.size() > 0)
+		if (numEntries() > 0)
 			return false;
 		// basic removal
 		return super.remove();
@@ -124,7 +245,7 @@ public class LogicalDirectory extends Directory {
 	 * @return int - number of directory entries
 	 */
 	public int numEntries () {
-		return list.size();
+		return list.length;
 	}
 	//-----------------------------------------------------------------
 	/**
@@ -133,7 +254,7 @@ public class LogicalDirectory extends Directory {
 	 * @return Entry - selected entry
 	 */
 	public Entry getEntryAt (int pos) {
-		return list.elementAt (pos);
+		return list[pos];
 	}
 	//-----------------------------------------------------------------
 	/**
@@ -156,9 +277,38 @@ public class LogicalDirectory extends Directory {
 	 * @return boolean - successful operation
 	 */
 	public boolean add (Entry e) {
-		list.add (e);
+		synchronized (this) {
+			Entry[] old = list;
+			Entry[] res = new Entry [old.length+1];
+			System.arraycopy (old, 0, res, 0, old.length);
+			res[old.length] = e;
+			list = res;
+		}
 		e.setParent (this);
 		setModified();
+		fireEvent (EV_CREATE, e);
+		return true;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Add a set of entries to the directory (the list of entries
+	 * is copied only once).</p>
+	 * @param entries Entry[] - entries to be added
+	 * @return boolean - successful operation
+	 */
+	public boolean addAll (Entry[] entries) {
+		synchronized (this) {
+			Entry[] old = list;
+			Entry[] res = new Entry [old.length + entries.length];
+			System.arraycopy (old, 0, res, 0, old.length);
+			System.arraycopy (entries, 0, res, old.length, entries.length);
+			list = res;
+		}
+		for (Entry e : entries)
+			e.setParent (this);
+		setModified();
+		for (Entry e : entries)
+			fireEvent (EV_CREATE, e);
 		return true;
 	}
 	//-----------------------------------------------------------------
@@ -168,8 +318,27 @@ public class LogicalDirectory extends Directory {
 	 * @return boolean - remove successful?
 	 */
 	public boolean remove (Entry e) {
+		synchronized (this) {
+			// find entry in list
+			Entry[] old = list;
+			int pos = old.length-1;
+			while (pos >= 0 && old[pos] != e)
+				pos--;
+			if (pos < 0)
+				return false;
+			// drop entry
+			if (old.length == 1) {
+				list = EMPTY;
+			} else {
+				Entry[] res = new Entry [old.length-1];
+				System.arraycopy (old, 0, res, 0, pos);
+				System.arraycopy (old, pos+1, res, pos, res.length-pos);
+				list = res;
+			}
+		}
 		setModified();
-		return list.remove(e);
+		fireEvent (EV_REMOVE, e);
+		return true;
 	}
 	//-----------------------------------------------------------------
 	/**
@@ -193,10 +362,9 @@ public class LogicalDirectory extends Directory {
 		Permissions permEnt = new Permissions (cr.getUser(), cr.getGroup(), perm);
 		
 		// allocate new entry
-		Entry e = (asDir ?
-				new LogicalDirectory (name, permEnt, DEFAULT_DEVICE)
-			:	new LogicalFile      (name, permEnt, DEFAULT_DEVICE)
-		);
+		Entry e = newEntry (asDir, name, permEnt);
+		if (e == null)
+			return null;
 		// add entry to directory.
 		if (add (e))
 			return e;
@@ -204,19 +372,73 @@ public class LogicalDirectory extends Directory {
 		return null;
 	}
 	
-	//=================================================================
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Allocate a new (empty) entry for a "create" operation.
+	 * Derived directories override this method to populate
+	 * themselves with entries of their own kind.</p>
+	 * @param asDir boolean - allocate a (sub-)directory?
+	 * @param name String - name of entry
+	 * @param perm Permissions - access permissions for entry
+	 * @return Entry - new entry (or null)
+	 */
+	protected Entry newEntry (boolean asDir, String name, Permissions perm) {
+		if (asDir)
+			return new LogicalDirectory (name, perm, DEFAULT_DEVICE);
+		// files created by clients are limited in size.
+		MemoryFile f = new MemoryFile (name, perm, DEFAULT_DEVICE);
+		f.maxSize = MemoryFile.getCreateLimit();
+		return f;
+	}
+	
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get a snapshot of the directory entries.</p>
+	 * @return Snapshot - list of entries
+	 */
+	protected Snapshot snapshot () {
+		return entries();
+	}
+	//-----------------------------------------------------------------
 	/**
-	 * <p>Flag the directory as "modified".</p> 
+	 * <p>Get the current entries of the directory without loading
+	 * entries or recording an access (housekeeping).</p>
+	 * @return Snapshot - list of entries
 	 */
-	public void setModified() {
-		super.setModified();
-		dirty = true;
+	Snapshot entries () {
+		// the entry list is copy-on-write.
+		Entry[] res = list;
+		return new Snapshot (res, res.length);
 	}
 	
 	//=================================================================
+	/**
+	 * <p>Open directory for user with credential for access.</p>
+	 * @param cr Credential - authenticated user credential
+	 * @param mode int - access mode
+	 * @return Handle - handle to opened directory
+	 */
+	public Handle open (Credential cr, int mode) {
+
+		// try to open entry.
+		Handle hdl = super.open (cr, mode);
+		if (hdl.rc != Handle.RC_OK)
+			// open failed on basic level
+			return hdl;
+
+		// create our own handle.
+		ListingHandle lHdl = new ListingHandle();
+		lHdl.rc = hdl.rc;
+		lHdl.forRead = hdl.forRead;
+		lHdl.forWrite = hdl.forWrite;
+		lHdl.userCredential = hdl.userCredential;
+		return lHdl;
+	}
+
+	//-----------------------------------------------------------------
 	/**
 	 * <p>Read entry content starting at offset for given number
-	 * of bytes.</p>
+	 * of bytes. Only complete stat records are returned.</p>
 	 * @param hdl Handle - handle to opened file
 	 * @param offset int - offset into entry content
 	 * @param size int - number of bytes to be read
@@ -227,44 +449,40 @@ public class LogicalDirectory extends Directory {
 		// flag entry as accessed.
 		setAccessed();
 		
-		// assemble directory listing if required.
-		if (dirty || dirList == null)
-			generateListing (fmt);
-		inUse = true;
+		// get listing state.
+		ListingHandle lHdl = (hdl instanceof ListingHandle ? (ListingHandle) hdl : new ListingHandle());
+		if (offset < 0 || size < 0)
+			return null;
+		// (re-)start listing on a fresh snapshot.
+		if (offset == 0 || lHdl.entries == null)
+			lHdl.reset (snapshot());
 
-		// check bounds
-		int pos = (int) offset;
-		int listSize = dirList.length;
-		if (pos < 0 || pos > listSize-1 || size < 0)
+		// find first entry in window.
+		int idx = lHdl.locate (offset, fmt);
+		if (idx < 0)
 			return null;
-		
-		// create response
-		int count = Math.min (size, listSize - pos);
-		byte[] res = new byte [count];
-		System.arraycopy (dirList, pos, res, 0, count);
-		
-		// release listing after final read.
-		if ( (pos+size) > listSize)
-			inUse = false;
-		
-		// return content.
-		return res;
-	}
-	
-	//=================================================================
-	/**
-	 * <p>Generate directory listing. The listing is probably only
-	 * available during read operations.</p> 
-	 * @param fmt Formatter - protocol-specific entry representation
-	 */
-	private void generateListing (AttributeHandler fmt) {
-		
-		// traverse entries in directory
+
+		// assemble stat records that fit into the window.
 		Blob res = new Blob();
-		for (Entry e : list) {
-			byte[] stat = fmt.getStat (e);
-			res.putArray (stat);
+		long pos = offset;
+		int count = lHdl.entries.count;
+		while (idx < count) {
+			// skip gaps (removed entries).
+			Entry e = lHdl.entries.get (idx);
+			if (e != null) {
+				byte[] stat = fmt.getStat (e);
+				if (pos - offset + stat.length > size)
+					break;
+				res.putArray (stat);
+				pos += stat.length;
+			}
+			lHdl.setOffset (++idx, pos);
 		}
-		dirList = res.asByteArray(false);
+		// check for end of listing.
+		if (pos == offset)
+			return null;
+		
+		// return content.
+		return res.asByteArray (false);
 	}
 }
@@ -57,7 +57,7 @@ public class LogicalFile extends File {
 	
 	//=================================================================
 	/**
-	 * <p>Maximum size of file (in memory).</p>
+	 * <p>Default maximum size of file (in memory).</p>
 	 */
 	protected static final int MAX_SIZE = 4096;
 	
@@ -65,8 +65,8 @@ public class LogicalFile extends File {
 	/*
 	 * Attributes:
 	 */
-	protected byte[]	content;		// file content (limited size)
-	protected int		size;			// current file size 
+	protected volatile byte[]	content;	// file content (limited size)
+	protected volatile int		size;		// current file size 
 
 	//=================================================================
 	/**
@@ -98,7 +98,7 @@ public class LogicalFile extends File {
 
 		// get maximum size of logical file.
 		String sizeStr = p.get ("size");
-		int size = 4096;
+		int size = MAX_SIZE;
 		if (sizeStr != null) {
 			try {
 				size = Integer.parseInt (sizeStr);
@@ -106,8 +106,10 @@ public class LogicalFile extends File {
 			catch (NumberFormatException e) {
 			}
 		}
-		content = new byte [size];
-		size = 0;
+		synchronized (this) {
+			content = new byte [size];
+			this.size = 0;
+		}
 		return null;
 	}
 		
@@ -116,7 +118,9 @@ public class LogicalFile extends File {
 	 * <p>Initialize file (in memory, transient to session).</p>
 	 * @param data byte[] - initializing data (or null)
 	 */
-	public void setContent (byte[] data) {
+	public synchronized void setContent (byte[] data) {
+		if (content == null)
+			content = new byte [MAX_SIZE];
 		// initialize attributes
 		if (data != null) {
 			int count = Math.min (data.length, content.length);
@@ -139,14 +143,18 @@ public class LogicalFile extends File {
 	 */
 	public byte[] read (Handle hdl, long offset, int count, AttributeHandler fmt) {
 		
+		// get consistent view on content.
+		int len = size;
+		byte[] data = content;
+		
 		// check bounds.
-		if (offset < 0 || offset > size-1)
+		if (offset < 0 || offset > len-1)
 			return null;
 		
 		// assemble result.
-		int num = (int) Math.min (size-offset, count);
+		int num = (int) Math.min (len-offset, count);
 		byte[] res = new byte [num];
-		System.arraycopy (content, (int)offset, res, 0, num);
+		System.arraycopy (data, (int)offset, res, 0, num);
 		return res;
 	}
 	
@@ -160,14 +168,18 @@ public class LogicalFile extends File {
 	 * @param count int - number of bytes to be written
 	 * @return int - number of bytes written
 	 */
-	public int write (Handle hdl, byte[] data, long offset, int count) {
+	public synchronized int write (Handle hdl, byte[] data, long offset, int count) {
+		
+		// allocate buffer if not configured (created by a client).
+		if (content == null)
+			content = new byte [MAX_SIZE];
 		
 		// check bounds.
-		if (offset < 0 || offset > MAX_SIZE-1)
+		if (offset < 0 || offset > content.length-1)
 			return 0;
 		
 		// write data
-		int num = (int) Math.min (MAX_SIZE-offset, count);
+		int num = (int) Math.min (content.length-offset, count);
 		System.arraycopy (data, 0, content, (int)offset, num);
 		// we have a new size
 		size = (int)offset + num;
@@ -0,0 +1,463 @@
+
+//******************************************************************
+//*   PGMID.        CHUNKED IN-MEMORY FILE.                        *
+//*   AUTHOR.       BERND R. FIX   >Y<                             *
+//*   DATE WRITTEN. 26/10/18.                                      *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.      *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE    *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.       *
+//******************************************************************
+//*                                                                *
+//*  StyxLib: Java-based Styx server framework                     *
+//*                                                                *
+//*  Copyright (C) 2009-2012, Bernd R. Fix                         *
+//*                                                                *
+//*  This program is free software; you can redistribute it and/or *
+//*  modify it under the terms of the GNU Lesser General Public    *
+//*  License (LGPL) as published by the Free Software Foundation;  *
+//*  either version 3 of the License, or (at your option) any      *
+//*  later version.                                                *
+//*                                                                *
+//*  This program is distributed in the hope that it will be use-  *
+//*  ful, but WITHOUT ANY WARRANTY; without even the implied       *
+//*  warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR       *
+//*  PURPOSE. See the GNU General Public License for more details. *
+//*                                                                *
+//*  You should have received a copy of the GNU General Public     *
+//*  Licenses along with this program; if not, see                 *
+//*  <http://www.gnu.org/licenses/>.                               *
+//*                                                                *
+//******************************************************************
+
+package j9p.ns.handlers;
+
+///////////////////////////////////////////////////////////////////////////////
+//import external declarations.
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import j9p.auth.Credential;
+import j9p.ns.File;
+import j9p.ns.Permissions;
+
+
+///////////////////////////////////////////////////////////////////////////////
+/**
+ * <p>A <b>MemoryFile</b> is a namespace entry that keeps its content in
+ * memory (like a <i>LogicalFile</i>), but grows on demand: the content is
+ * stored in chunks of fixed size that are allocated when data is written
+ * to them. Chunks are indexed by their number, so unwritten ranges
+ * ("holes") of sparse files use no memory and read as zeros. Files can
+ * be larger than 2GB.</p>
+ * <p>Chunks are allocated on the heap or in direct (off-heap) memory
+ * ("offheap" attribute). Reads only copy the requested range from the
+ * affected chunks; they don't block each other or writers.</p>
+ * <p>Opening the file with OTRUNC discards the content.</p>
+ * <p>If a memory budget is set (see <i>SpillStore</i>), the content of
+ * files that were not used recently is moved to disk.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public class MemoryFile extends File {
+
+	//=================================================================
+	/**
+	 * <p>Default size of a chunk.</p>
+	 */
+	protected static final int DEFAULT_CHUNK = 65536;
+	/**
+	 * <p>Default max. size of files created by clients (16MB).</p>
+	 */
+	public static final long DEFAULT_CREATE_LIMIT = 16L << 20;
+
+	//=================================================================
+	/*
+	 * Shared state:
+	 */
+	private static volatile long createLimit = DEFAULT_CREATE_LIMIT;	// max. size of created files
+
+	//=================================================================
+	/*
+	 * Attributes:
+	 */
+	protected int chunkSize = DEFAULT_CHUNK;			// size of a chunk
+	protected boolean offHeap = false;					// chunks in direct memory?
+	protected long maxSize = 0;							// max. file size (0=unlimited)
+	protected volatile Map<Integer,ByteBuffer> chunks =	// content chunks (null=spilled)
+		new ConcurrentHashMap<Integer,ByteBuffer>();
+	protected volatile long size = 0;					// current file size
+	protected long memory = 0;							// memory used by chunks
+	private SpillStore.SpillFile spilled = null;		// spilled content
+	private HashSet<Integer> present = null;			// spilled chunks (no holes)
+
+	//=================================================================
+	/**
+	 * <p>Instantiate a new memory file in the namespace.</p>
+	 * @param name String - name of entry
+	 * @param perm Permissions - access permissions for file
+	 * @param device String - mount handler
+	 */
+	public MemoryFile (String name, Permissions perm, String device) {
+		super (name, perm, device);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Protected constructor for uninitialized entry.</p>
+	 */
+	public MemoryFile () {
+	}
+
+	//=================================================================
+	/**
+	 * <p>Set the maximum size of files created by clients.</p>
+	 * @param bytes long - max. file size (at least one byte)
+	 */
+	public static void setCreateLimit (long bytes) {
+		createLimit = Math.max (1, bytes);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get the maximum size of files created by clients.</p>
+	 * @return long - max. file size
+	 */
+	public static long getCreateLimit () {
+		return createLimit;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Read configuration: the optional attributes "size" (maximum
+	 * file size in bytes), "chunk" (size of a chunk in bytes) and
+	 * "offheap" (value "true" for chunks in direct memory).</p>
+	 * @param p Hashtable<String,String> - parameter set
+	 * @return Process - started thread (or null)
+	 */
+	public Process startHandler (Hashtable<String,String> p) {
+		try {
+			String val = p.get ("size");
+			if (val != null)
+				maxSize = Math.max (0, Long.parseLong (val));
+			val = p.get ("chunk");
+			if (val != null)
+				chunkSize = Math.max (512, Integer.parseInt (val));
+		}
+		catch (NumberFormatException e) {
+		}
+		offHeap = "true".equals (p.get ("offheap"));
+		return null;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Initialize file content.</p>
+	 * @param data byte[] - initializing data (or null)
+	 */
+	public void setContent (byte[] data) {
+		truncate();
+		if (data != null)
+			write (null, data, 0, data.length);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Discard the file content.</p>
+	 */
+	protected synchronized void truncate () {
+		if (spilled != null) {
+			spilled.discard();
+			spilled = null;
+			present = null;
+		}
+		chunks = new ConcurrentHashMap<Integer,ByteBuffer>();
+		SpillStore.released (this, memory, true);
+		memory = 0;
+		size = 0;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Remove entry from namespace (and discard content).</p>
+	 * @return boolean successful operation?
+	 */
+	public boolean remove () {
+		if (!super.remove())
+			return false;
+		truncate();
+		return true;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Move the content to a spill file and release the memory
+	 * (called by the SpillStore if the memory budget is exceeded).</p>
+	 * @return boolean - memory released?
+	 */
+	synchronized boolean spill () {
+		Map<Integer,ByteBuffer> list = chunks;
+		if (list == null || memory == 0)
+			return false;
+		SpillStore.SpillFile sf = null;
+		HashSet<Integer> bits = new HashSet<Integer>();
+		try {
+			sf = new SpillStore.SpillFile();
+			byte[] tmp = new byte [chunkSize];
+			for (Map.Entry<Integer,ByteBuffer> c : list.entrySet()) {
+				int idx = c.getKey();
+				ByteBuffer buf = c.getValue().duplicate();
+				buf.position (0);
+				buf.get (tmp);
+				sf.write ((long) idx * chunkSize, tmp, 0, chunkSize);
+				bits.add (idx);
+			}
+		}
+		catch (IOException e) {
+			// keep content in memory.
+			if (sf != null)
+				sf.discard();
+			return false;
+		}
+		spilled = sf;
+		present = bits;
+		chunks = null;
+		SpillStore.released (this, memory, true);
+		memory = 0;
+		return true;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Read spilled content back into memory (if it fits into
+	 * the memory budget). Called with the lock of the file held.</p>
+	 * @return boolean - content in memory?
+	 */
+	private boolean promote () {
+		long bytes = (long) present.size() * chunkSize;
+		if (!SpillStore.fits (bytes))
+			return false;
+		Map<Integer,ByteBuffer> list = new ConcurrentHashMap<Integer,ByteBuffer>();
+		try {
+			byte[] tmp = new byte [chunkSize];
+			for (Integer idx : present) {
+				spilled.read ((long) idx * chunkSize, tmp, 0, chunkSize);
+				ByteBuffer buf = allocate();
+				buf.duplicate().put (tmp);
+				list.put (idx, buf);
+			}
+		}
+		catch (IOException e) {
+			return false;
+		}
+		catch (OutOfMemoryError e) {
+			return false;
+		}
+		spilled.discard();
+		spilled = null;
+		present = null;
+		memory = bytes;
+		SpillStore.allocated (this, bytes);
+		chunks = list;
+		return true;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Allocate a new chunk.</p>
+	 * @return ByteBuffer - chunk
+	 */
+	private ByteBuffer allocate () {
+		return (offHeap ? ByteBuffer.allocateDirect (chunkSize) : ByteBuffer.allocate (chunkSize));
+	}
+
+	//=================================================================
+	/**
+	 * <p>Open file for user with credential for access.</p>
+	 * @param cr Credential - authenticated user credential
+	 * @param mode int - access mode
+	 * @return Handle - handle to opened file
+	 */
+	public Handle open (Credential cr, int mode) {
+		Handle hdl = super.open (cr, mode);
+		if (hdl.rc == Handle.RC_OK && hdl.forWrite && (mode & Permissions.OTRUNC) != 0)
+			truncate();
+		return hdl;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Read entry content starting at offset for given number
+	 * of bytes.</p>
+	 * @param hdl Handle - handle to opened file
+	 * @param offset long - offset into entry content
+	 * @param count int - number of bytes to be read
+	 * @param fmt Formatter - protocol-specific entry representation
+	 * @return byte[] - read content
+	 */
+	public byte[] read (Handle hdl, long offset, int count, AttributeHandler fmt) {
+
+		// check bounds.
+		SpillStore.touch (this);
+		long len = size;
+		if (offset < 0 || offset >= len || count <= 0)
+			return null;
+		int num = (int) Math.min (len - offset, count);
+		byte[] res = new byte [num];
+
+		// get consistent view on content.
+		Map<Integer,ByteBuffer> list = chunks;
+		if (list == null) {
+			// content spilled to disk.
+			synchronized (this) {
+				if (chunks == null && !promote()) {
+					// too large for memory: read from disk.
+					try {
+						spilled.read (offset, res, 0, num);
+						return res;
+					}
+					catch (IOException e) {
+						return null;
+					}
+				}
+				list = chunks;
+			}
+			SpillStore.balance (this);
+		}
+
+		// assemble result from chunks (holes read as zeros).
+		int done = 0;
+		while (done < num) {
+			long pos = offset + done;
+			int idx = (int) (pos / chunkSize);
+			int from = (int) (pos % chunkSize);
+			int n = Math.min (num - done, chunkSize - from);
+			ByteBuffer c = list.get (idx);
+			if (c != null) {
+				ByteBuffer buf = c.duplicate();
+				buf.position (from);
+				buf.get (res, done, n);
+			}
+			done += n;
+		}
+		return res;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Write entry content starting at offset for given number
+	 * of bytes. Missing chunks are allocated.</p>
+	 * @param hdl Handle - handle to opened file
+	 * @param data byte[] - data to be written
+	 * @param offset long - offset into entry content
+	 * @param count int - number of bytes to be written
+	 * @return int - number of bytes written
+	 */
+	public int write (Handle hdl, byte[] data, long offset, int count) {
+		SpillStore.touch (this);
+		int num = writeContent (data, offset, count);
+		// spill other files if memory budget is exceeded.
+		SpillStore.balance (this);
+		return num;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Write data into chunks (or into the spill file).</p>
+	 * @param data byte[] - data to be written
+	 * @param offset long - offset into entry content
+	 * @param count int - number of bytes to be written
+	 * @return int - number of bytes written
+	 */
+	private synchronized int writeContent (byte[] data, long offset, int count) {
+
+		// check bounds.
+		if (offset < 0 || count <= 0)
+			return 0;
+		if (maxSize > 0) {
+			if (offset >= maxSize)
+				return 0;
+			count = (int) Math.min (maxSize - offset, count);
+		}
+		long last = (offset + count - 1) / chunkSize;
+		if (last >= Integer.MAX_VALUE)
+			return 0;
+
+		// a file that outgrows its share of the memory budget
+		// is moved to disk (before new chunks are allocated).
+		Map<Integer,ByteBuffer> list = chunks;
+		if (list != null) {
+			long grow = 0;
+			for (int idx = (int) (offset / chunkSize); idx <= last; idx++)
+				if (!list.containsKey (idx))
+					grow += chunkSize;
+			if (grow > 0 && !SpillStore.fits (memory + grow)) {
+				spill();
+				list = chunks;
+			}
+		}
+		// content spilled to disk?
+		if (list == null && !promote()) {
+			// too large for memory: write to disk.
+			try {
+				spilled.write (offset, data, 0, count);
+			}
+			catch (IOException e) {
+				return 0;
+			}
+			for (int idx = (int) (offset / chunkSize); idx <= last; idx++)
+				present.add (idx);
+			if (offset + count > size)
+				size = offset + count;
+			return count;
+		}
+		list = chunks;
+
+		// write data into chunks.
+		int done = 0;
+		long alloc = 0;
+		try {
+			while (done < count) {
+				long pos = offset + done;
+				int idx = (int) (pos / chunkSize);
+				int from = (int) (pos % chunkSize);
+				int n = Math.min (count - done, chunkSize - from);
+				ByteBuffer c = list.get (idx);
+				if (c == null) {
+					c = allocate();
+					list.put (idx, c);
+					alloc += chunkSize;
+				}
+				ByteBuffer buf = c.duplicate();
+				buf.position (from);
+				buf.put (data, done, n);
+				done += n;
+			}
+		}
+		catch (OutOfMemoryError e) {
+			// no memory for more chunks: report partial write.
+		}
+		if (alloc > 0) {
+			memory += alloc;
+			SpillStore.allocated (this, alloc);
+		}
+		// we have a new size
+		if (offset + done > size)
+			size = offset + done;
+		return done;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get size of entry.</p>
+	 * @return long - entry size
+	 */
+	public long getSize () {
+		return size;
+	}
+}
@@ -0,0 +1,227 @@
+
+//******************************************************************
+//*   PGMID.        OVERLAY (UNION) NAMESPACE DIRECTORY.           *
+//*   AUTHOR.       BERND R. FIX   >Y<                             *
+//*   DATE WRITTEN. 26/10/18.                                      *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.      *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE    *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.       *
+//******************************************************************
+//*                                                                *
+//*  StyxLib: Java-based Styx server framework                     *
+//*                                                                *
+//*  Copyright (C) 2009-2012, Bernd R. Fix                         *
+//*                                                                *
+//*  This program is free software; you can redistribute it and/or *
+//*  modify it under the terms of the GNU Lesser General Public    *
+//*  License (LGPL) as published by the Free Software Foundation;  *
+//*  either version 3 of the License, or (at your option) any      *
+//*  later version.                                                *
+//*                                                                *
+//*  This program is distributed in the hope that it will be use-  *
+//*  ful, but WITHOUT ANY WARRANTY; without even the implied       *
+//*  warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR       *
+//*  PURPOSE. See the GNU General Public License for more details. *
+//*                                                                *
+//*  You should have received a copy of the GNU General Public     *
+//*  Licenses along with this program; if not, see                 *
+//*  <http://www.gnu.org/licenses/>.                               *
+//*                                                                *
+//******************************************************************
+
+package j9p.ns.handlers;
+
+///////////////////////////////////////////////////////////////////////////////
+//import external declarations.
+
+import java.util.HashSet;
+import j9p.ns.Directory;
+import j9p.ns.Entry;
+import j9p.ns.Permissions;
+
+
+///////////////////////////////////////////////////////////////////////////////
+/**
+ * <p>An <b>OverlayDirectory</b> is a logical directory that is laid over
+ * a directory of another (base) namespace: The directory contains the
+ * entries of the base directory plus its own entries; own entries hide
+ * base entries with the same name (union directory).</p>
+ * <p>Entries of the base directory are shared and not copied, so many
+ * namespaces can use the same subtree without duplicating it. Changes to
+ * a shared entry are visible in all namespaces that use it. Entries are
+ * created in the overlay only; removing a shared entry only hides it in
+ * the overlay (whiteout), the base directory is never changed.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public class OverlayDirectory extends LogicalDirectory {
+
+	//=================================================================
+	/*
+	 * Attributes:
+	 */
+	protected Directory base = null;				// underlying (shared) directory
+	private volatile Entry[] merged = null;			// merged list of entries
+	private Entry[] mergedList = null;				// own entries in merged list
+	private int mergedVersion = -1;					// base version of merged list
+	private HashSet<String> hidden = new HashSet<String>();	// removed base entries
+
+	//=================================================================
+	/**
+	 * <p>Instantiate a new overlay directory in the namespace.</p>
+	 * @param name String - name of entry
+	 * @param perm Permissions - access permissions for file
+	 * @param device String - mount handler
+	 * @param base Directory - underlying (shared) directory
+	 */
+	public OverlayDirectory (String name, Permissions perm, String device, Directory base) {
+		super (name, perm, device);
+		this.base = base;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Protected constructor for uninitialized entry.</p>
+	 */
+	public OverlayDirectory () {
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Set the underlying (shared) directory.</p>
+	 * @param base Directory - underlying directory
+	 */
+	public void setBase (Directory base) {
+		this.base = base;
+		merged = null;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get the underlying (shared) directory.</p>
+	 * @return Directory - underlying directory
+	 */
+	public Directory getBase () {
+		return base;
+	}
+
+	//=================================================================
+	//	Manage list of contained entries.
+	//=================================================================
+	/**
+	 * <p>Get number of entries in this directory.</p>
+	 * @return int - number of directory entries
+	 */
+	public int numEntries () {
+		return merge().length;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get indexed entry in directory.</p>
+	 * @param pos int - directory index
+	 * @return Entry - selected entry
+	 */
+	public Entry getEntryAt (int pos) {
+		Entry[] all = merge();
+		if (pos < 0 || pos >= all.length)
+			return null;
+		return all[pos];
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get named namespace entry. Own entries hide entries
+	 * of the base directory.</p>
+	 * @param name String - name of entry (sub-directory)
+	 * @return Entry - associated namespace entry
+	 */
+	public Entry getEntryByName (String name) {
+		Entry e = super.getEntryByName (name);
+		if (e == null && base != null && !isHidden (name))
+			e = base.getEntryByName (name);
+		return e;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Remove an entry looked up in this directory: own entries
+	 * are removed, shared entries of the base directory are hidden
+	 * in this overlay.</p>
+	 * @param e Entry - entry to be removed
+	 * @return boolean - remove successful?
+	 */
+	public boolean unlink (Entry e) {
+		if (e.getParent() == this)
+			return e.remove();
+		synchronized (this) {
+			if (base == null || !hidden.add (e.getName()))
+				return false;
+			merged = null;
+		}
+		setModified();
+		fireEvent (EV_REMOVE, e);
+		return true;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Check if an entry of the base directory is hidden.</p>
+	 * @param name String - name of entry
+	 * @return boolean - entry hidden?
+	 */
+	private synchronized boolean isHidden (String name) {
+		return hidden.contains (name);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get a snapshot of the directory entries (see <i>merge()</i>).</p>
+	 * @return Snapshot - list of entries
+	 */
+	protected Snapshot snapshot () {
+		Entry[] all = merge();
+		return new Snapshot (all, all.length);
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get the merged list of entries: own entries followed by
+	 * the entries of the base directory that are not hidden by own
+	 * entries or removed in the overlay. The merged list is rebuilt
+	 * only if one of the directories has changed.</p>
+	 * @return Entry[] - list of entries
+	 */
+	private Entry[] merge () {
+		if (base == null)
+			return list;
+		synchronized (this) {
+			// check for changes.
+			Entry[] own = list;
+			int version = base.getVersion();
+			if (merged != null && own == mergedList && version == mergedVersion)
+				return merged;
+
+			// collect own entries...
+			HashSet<String> names = new HashSet<String> (hidden);
+			for (Entry e : own)
+				names.add (e.getName());
+			// ... and not hidden base entries.
+			int count = base.numEntries();
+			Entry[] res = new Entry [own.length + count];
+			System.arraycopy (own, 0, res, 0, own.length);
+			int pos = own.length;
+			for (int n = 0; n < count; n++) {
+				Entry e = base.getEntryAt (n);
+				if (e != null && !names.contains (e.getName()))
+					res[pos++] = e;
+			}
+			if (pos < res.length) {
+				Entry[] trunc = new Entry [pos];
+				System.arraycopy (res, 0, trunc, 0, pos);
+				res = trunc;
+			}
+			// keep merged list.
+			mergedList = own;
+			mergedVersion = version;
+			merged = res;
+			return res;
+		}
+	}
+}
@@ -42,6 +42,9 @@ import j9p.ns.Entry;
 /**
  * <p>A <b>Process</b> is a concurrent thread that controls the behavior
  * of a namespace entry (usually a file).</p>
+ * <p>Engines that only react to events should be derived from
+ * <i>ScheduledEngine</i>: they run as tasks on a shared scheduler
+ * instead of their own thread.</p>
  * 
  * @author Bernd R. Fix   >Y<
  * @version 1.0
@@ -62,10 +65,46 @@ public abstract class Process extends Thread {
 	}
 	//-----------------------------------------------------------------
 	/**
-	 * <p>Terminate running engine request.</p> 
+	 * <p>Bind a running engine to another namespace entry (an engine
+	 * taken over by the entry of a reloaded configuration).</p>
+	 * @param e Entry - new associated namespace entry
+	 */
+	public void setEntry (Entry e) {
+		ent = e;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Terminate running engine request: the thread is interrupted
+	 * to end blocking calls.</p> 
 	 */
 	public void terminate () {
 		running = false;
+		suspended = false;
+		if (isAlive())
+			interrupt();
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Suspend engine: engines check <i>isSuspended()</i> and
+	 * don't process input while suspended.</p> 
+	 */
+	public void pause () {
+		suspended = running;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Resume suspended engine.</p> 
+	 */
+	public void proceed () {
+		suspended = false;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Is engine suspended?</p>
+	 * @return boolean - engine suspended
+	 */
+	public boolean isSuspended () {
+		return suspended;
 	}
 	//-----------------------------------------------------------------
 	/**
@@ -79,6 +118,7 @@ public abstract class Process extends Thread {
 	/*
 	 * Attributes:
 	 */
-	private boolean running = false;
+	private volatile boolean running = false;
+	private volatile boolean suspended = false;
 	protected Entry ent = null;
 }
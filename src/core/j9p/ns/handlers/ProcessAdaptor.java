@@ -35,6 +35,7 @@ package j9p.ns.handlers;
 //import external declarations.
 
 import java.util.Hashtable;
+import j9p.util.RingBuffer;
 
 
 ///////////////////////////////////////////////////////////////////////////////
@@ -43,6 +44,10 @@ import java.util.Hashtable;
 * Listener interface from the class LogicalFile.</p>
 * <p>It provides two methods "read" and "write" to provide
 * data exchange with an application in derived classes.</p>
+* <p>Input and output are queued in ring buffers of size "buf"; the
+* "overflow" attribute defines what happens if data is written to a
+* full queue: "drop" (default) drops the data that doesn't fit,
+* "block" waits for free space and "error" rejects the write.</p>
 * 
 * @author Bernd R. Fix   >Y<
 * @version 1.0
@@ -53,13 +58,10 @@ public abstract class ProcessAdaptor extends Process implements ProcessFile.List
 	/*
 	 * Attributes for input/output buffer handling:
 	 */
-	private int				bufSize;
-	private boolean			alloc;
-	private byte[] 			inputBuffer;
-	private volatile int    inputPos;
-	private byte[]			outputBuffer;
-	private volatile int    outputPos;
-	private Object 			semaphore;
+	private int						bufSize;
+	private int						overflow;
+	private volatile RingBuffer		input;
+	private volatile RingBuffer		output;
 
 	//=================================================================
 	/**
@@ -69,8 +71,8 @@ public abstract class ProcessAdaptor extends Process implements ProcessFile.List
 	 */
 	public ProcessAdaptor () {
 		bufSize = 4096;
-		alloc = false;
-		semaphore = new Object();
+		overflow = RingBuffer.OVERFLOW_DROP;
+		input = output = null;
 	}
 	
 	//=================================================================
@@ -94,6 +96,8 @@ public abstract class ProcessAdaptor extends Process implements ProcessFile.List
 			}
 		}
 		bufSize = size;
+		// get overflow policy
+		overflow = RingBuffer.getPolicy (p.get ("overflow"), RingBuffer.OVERFLOW_DROP);
 		return null;
 	}
 	
@@ -102,11 +106,13 @@ public abstract class ProcessAdaptor extends Process implements ProcessFile.List
 	 * <p>Allocate buffers when needed.</p> 
 	 */
 	private void alloc () {
-		if (!alloc) {
-			inputBuffer = new byte [bufSize];
-			outputBuffer = new byte [bufSize];
-			inputPos = outputPos = 0;
-			alloc = true;
+		if (output != null)
+			return;
+		synchronized (this) {
+			if (output == null) {
+				input = new RingBuffer (bufSize, overflow);
+				output = new RingBuffer (bufSize, overflow);
+			}
 		}
 	}
 	
@@ -122,38 +128,41 @@ public abstract class ProcessAdaptor extends Process implements ProcessFile.List
 	 */
 	protected byte[] read (int num, boolean block) {
 		alloc();
-		// input data available?
-		if (inputPos == 0 && block) {
-			// no wait for input.
-			synchronized (semaphore) {
-				try { semaphore.wait(); } catch (InterruptedException e) { }
-			}
-		}
-		synchronized (inputBuffer) {
-			int count = Math.min (inputPos, num);
-			if (count < 1)
-				return null;
-			byte[] res = new byte [count];
-			System.arraycopy (inputBuffer, 0, res, 0, count);
-			System.arraycopy (inputBuffer, count, inputBuffer, 0, bufSize-count);
-			inputPos -= count;
-			return res;
-		}
+		return input.read (num, block ? -1 : 0);
 	}
 	//-----------------------------------------------------------------
 	/**
 	 * <p>Write data to the output queue.</p>
 	 * @param data byte[] - data to be written
-	 * @return int - number of bytes written
+	 * @return int - number of bytes written (-1 if rejected)
 	 */
 	protected int write (byte[] data) {
 		alloc();
-		synchronized (outputBuffer) {
-			int count = Math.min (bufSize-outputPos, data.length);
-			System.arraycopy (data, 0, outputBuffer, outputPos, count);
-			outputPos += count;
-			return count;
-		}
+		int num = output.write (data, 0, data.length);
+		// complete waiting reads.
+		if (num > 0 && ent instanceof ProcessFile)
+			((ProcessFile) ent).outputReady();
+		return num;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Queue data written to the process.</p>
+	 * @param data byte[] - incoming data
+	 * @return int - number of bytes accepted (-1 if rejected)
+	 */
+	int queueInput (byte[] data) {
+		alloc();
+		int num = input.write (data, 0, data.length);
+		if (num > 0)
+			inputReady();
+		return num;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>New input has been queued (for event-driven engines).</p>
+	 */
+	protected void inputReady () {
 	}
 
 	//=================================================================
@@ -165,18 +174,9 @@ public abstract class ProcessAdaptor extends Process implements ProcessFile.List
 	 * @param offset long - offset into data
 	 */
 	public void asInput (byte[] data, long offset) {
-		alloc ();
 		// we ignore the offset and simply append the data
 		// to the input queue.
-		synchronized (inputBuffer) {
-			int count = Math.min (bufSize-inputPos, data.length);
-			System.arraycopy (data, 0, inputBuffer, inputPos, count);
-			inputPos += count;
-		}
-		// notify any waiting reads
-		synchronized (semaphore) {
-			semaphore.notify();
-		}
+		queueInput (data);
 	}
 	//-----------------------------------------------------------------
 	/**
@@ -187,22 +187,16 @@ public abstract class ProcessAdaptor extends Process implements ProcessFile.List
 	public byte[] getOutput (long offset, int count) {
 		
 		// check for deferred allocation.
-		if (!alloc)
+		RingBuffer out = output;
+		if (out == null)
 			// no data available
 			return null;
 		
 		// we ignore the offset and simply return the data
 		// from the output queue. If offset is >0,
 		// we return no data!
-		count = Math.min (outputPos, count);
-		if (count == 0 || offset > 0)
+		if (offset > 0)
 			return null;
-		synchronized (outputBuffer) {
-			byte[] res = new byte [count];
-			System.arraycopy (outputBuffer, 0, res, 0, count);
-			System.arraycopy (outputBuffer, count, outputBuffer, 0, bufSize-count);
-			outputPos -= count;
-			return res;
-		}
+		return out.read (count, 0);
 	}
 }
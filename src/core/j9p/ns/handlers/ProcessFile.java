@@ -35,6 +35,11 @@ package j9p.ns.handlers;
 //import external declarations.
 
 import java.util.Hashtable;
+import java.util.LinkedList;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.Vector;
+import j9p.ns.Entry;
 import j9p.ns.File;
 import j9p.ns.Permissions;
 import j9p.ns.handlers.Process;
@@ -42,13 +47,18 @@ import j9p.ns.handlers.Process;
 
 ///////////////////////////////////////////////////////////////////////////////
 /**
-* <p>A <b>DiskFile</b> is a namespace entry that is mapped to a file in the
-* local filesystem of the server.</p>
+* <p>A <b>ProcessFile</b> is a namespace entry that passes written data
+* to a listener (or engine) and returns its output on reads.</p>
+* <p>Reads on a blocking process file ("block" attribute) wait for output
+* up to a deadline: the protocol handler registers a pending read that
+* is completed (and the reply sent) when the listener reports new output
+* with <i>outputReady()</i> or when the deadline has passed. No thread is
+* blocked while waiting; pending reads are cancelled by a flush.</p>
 * 
 * @author Bernd R. Fix   >Y<
 * @version 1.0
 */
-public class ProcessFile extends File {
+public class ProcessFile extends File implements ReadQueue {
 
 	//=================================================================
 	/**
@@ -78,12 +88,65 @@ public class ProcessFile extends File {
 		byte[] getOutput (long offset, int count);
 	}
 	
+	//=================================================================
+	/**
+	 * <p>A read operation waiting for output. The protocol handler
+	 * implements the completion (sending the reply).</p>
+	 */
+	public static abstract class PendingRead extends TimerTask {
+		
+		//-------------------------------------------------------------
+		/*
+		 * Attributes:
+		 */
+		ReadQueue	file = null;	// holder of read
+		long		offset;			// offset into output
+		int			count;			// number of expected bytes
+		byte[]		data = null;	// output for completion
+		
+		//-------------------------------------------------------------
+		/**
+		 * <p>Complete the read operation.</p>
+		 * @param data byte[] - output (or null if no output was
+		 * available before the deadline)
+		 */
+		public abstract void complete (byte[] data);
+		
+		//-------------------------------------------------------------
+		/**
+		 * <p>Deadline reached: complete with available output.</p>
+		 */
+		public void run () {
+			if (file != null)
+				file.expire (this);
+		}
+		
+		//-------------------------------------------------------------
+		/**
+		 * <p>Cancel pending read (without completion).</p>
+		 */
+		public void abort () {
+			cancel();
+			if (file != null)
+				file.dequeue (this);
+		}
+	}
+	
+	//=================================================================
+	/**
+	 * <p>Timer for deadlines of pending reads.</p>
+	 */
+	private static Timer timer = null;
+	
 	//=================================================================
 	/*
 	 * Attributes:
 	 */
 	protected Listener listener = null;			// process listener
 	protected Hashtable<String,String> params;	// parameter set
+	protected long blockTime = 0;				// max. wait for output (ms)
+	private LinkedList<PendingRead> pending = new LinkedList<PendingRead>();	// pending reads
+	private volatile ProcessFile successor = null;	// entry that took over the engine
 	
 	//=================================================================
 	/**
@@ -112,7 +175,7 @@ public class ProcessFile extends File {
 	 */
 	public Process startHandler (Hashtable<String,String> p) {
 		// save parameters
-		params = p;
+		setParams (p);
 
 		// instantiate a new handler
 		String type = p.get ("class");
@@ -125,9 +188,9 @@ public class ProcessFile extends File {
 				if (obj instanceof ProcessAdaptor) {
 					ProcessAdaptor engine = (ProcessAdaptor) obj;
 					
-					// pass parameters to engine and start it
+					// pass parameters to engine (the engine is
+					// started when the namespace is activated).
 					engine.init (this, params);
-					engine.start();
 					// set engine as listener.
 					this.listener = engine;
 					return engine;
@@ -142,6 +205,64 @@ public class ProcessFile extends File {
 		}
 		return null;
 	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Take over the running engine of an unchanged process file
+	 * from a replaced configuration.</p>
+	 * @param proc Process - running engine
+	 * @param p Hashtable<String,String> - parameter set
+	 * @return boolean - engine taken over?
+	 */
+	public boolean adoptHandler (Process proc, Hashtable<String,String> p) {
+		if (!(proc instanceof ProcessAdaptor))
+			return false;
+		setParams (p);
+		ProcessAdaptor engine = (ProcessAdaptor) proc;
+		Entry old = engine.ent;
+		engine.setEntry (this);
+		listener = engine;
+		// reads waiting on the replaced entry are notified by
+		// this entry from now on.
+		if (old instanceof ProcessFile && old != this)
+			((ProcessFile) old).handOver (this);
+		return true;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Move pending reads to the entry that took over the engine;
+	 * later blocking reads on this entry wait there too.</p>
+	 * @param next ProcessFile - entry that took over the engine
+	 */
+	private void handOver (ProcessFile next) {
+		synchronized (pending) {
+			successor = next;
+			synchronized (next.pending) {
+				for (PendingRead pr : pending) {
+					pr.file = next;
+					next.pending.addLast (pr);
+				}
+			}
+			pending.clear();
+		}
+		// complete reads with available output.
+		next.outputReady();
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Save parameters of the process file.</p>
+	 * @param p Hashtable<String,String> - parameter set
+	 */
+	private void setParams (Hashtable<String,String> p) {
+		params = p;
+		String val = p.get ("block");
+		if (val != null) {
+			try {
+				blockTime = Long.parseLong (val);
+			}
+			catch (NumberFormatException e) {
+			}
+		}
+	}
 		
 	//=================================================================
 	//	methods for read, write and size
@@ -162,6 +283,115 @@ public class ProcessFile extends File {
 			return listener.getOutput (offset, count);
 		return null;
 	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Do reads wait for output?</p>
+	 * @return boolean - blocking reads?
+	 */
+	public boolean isBlocking () {
+		return blockTime > 0 && listener != null;
+	}
+	
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Read output or wait for it: if output is available, the read
+	 * is completed immediately; otherwise it is completed when output
+	 * becomes available or the deadline has passed.</p>
+	 * @param hdl Handle - handle to opened file
+	 * @param offset long - offset into entry content
+	 * @param count int - number of bytes to be read
+	 * @param pr PendingRead - read operation
+	 */
+	public void read (Handle hdl, long offset, int count, PendingRead pr) {
+		byte[] data = null;
+		ProcessFile next;
+		synchronized (pending) {
+			// engine taken over by another entry?
+			next = successor;
+			if (next == null) {
+				if (listener != null)
+					data = listener.getOutput (offset, count);
+				if (data == null && blockTime > 0) {
+					// wait for output.
+					pr.file = this;
+					pr.offset = offset;
+					pr.count = count;
+					pending.addLast (pr);
+					getTimer().schedule (pr, blockTime);
+					return;
+				}
+			}
+		}
+		if (next != null)
+			next.read (hdl, offset, count, pr);
+		else
+			pr.complete (data);
+	}
+	
+	//-----------------------------------------------------------------
+	/**
+	 * <p>New output is available: complete pending reads (in order)
+	 * as long as there is output for them. Listeners of blocking files
+	 * call this method; ProcessAdaptor engines call it on every write.</p>
+	 */
+	public void outputReady () {
+		Vector<PendingRead> ready = new Vector<PendingRead>();
+		synchronized (pending) {
+			while (!pending.isEmpty()) {
+				PendingRead pr = pending.getFirst();
+				byte[] data = listener.getOutput (pr.offset, pr.count);
+				if (data == null)
+					break;
+				pending.removeFirst();
+				pr.cancel();
+				pr.data = data;
+				ready.add (pr);
+			}
+		}
+		// complete reads outside the lock.
+		for (PendingRead pr : ready)
+			pr.complete (pr.data);
+	}
+	
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Deadline of a pending read has passed.</p>
+	 * @param pr PendingRead - expired read
+	 */
+	public void expire (PendingRead pr) {
+		byte[] data = null;
+		ProcessFile next = null;
+		synchronized (pending) {
+			if (pending.remove (pr))
+				// last chance for output.
+				data = listener.getOutput (pr.offset, pr.count);
+			else if ((next = successor) == null)
+				return;
+		}
+		// moved to the entry that took over the engine?
+		if (next != null)
+			next.expire (pr);
+		else
+			pr.complete (data);
+	}
+	
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Remove a pending read.</p>
+	 * @param pr PendingRead - cancelled read
+	 */
+	public void dequeue (PendingRead pr) {
+		ProcessFile next;
+		synchronized (pending) {
+			if (pending.remove (pr))
+				return;
+			next = successor;
+		}
+		// moved to the entry that took over the engine?
+		if (next != null)
+			next.dequeue (pr);
+	}
+	
 	//-----------------------------------------------------------------
 	/**
 	 * <p>Write entry content starting at offset for given number
@@ -181,6 +411,9 @@ public class ProcessFile extends File {
 			data = res;
 		}
 		// ...and pass it to listener.
+		if (listener instanceof ProcessAdaptor)
+			// report accepted data (rejected writes fail).
+			return Math.max (0, ((ProcessAdaptor) listener).queueInput (data));
 		if (listener != null) {
 			listener.asInput (data, offset);
 			return count;
@@ -197,4 +430,15 @@ public class ProcessFile extends File {
 		// no size by default.
 		return 0;
 	}
+	
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get the (shared) timer for deadlines.</p>
+	 * @return Timer - timer
+	 */
+	private static synchronized Timer getTimer () {
+		if (timer == null)
+			timer = new Timer ("ProcessFile", true);
+		return timer;
+	}
 }
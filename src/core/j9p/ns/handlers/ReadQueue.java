@@ -0,0 +1,56 @@
+
+//******************************************************************
+//*   PGMID.        QUEUE OF PENDING READ OPERATIONS.              *
+//*   AUTHOR.       BERND R. FIX   >Y<                             *
+//*   DATE WRITTEN. 26/10/18.                                      *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.      *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE    *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.       *
+//******************************************************************
+//*                                                                *
+//*  StyxLib: Java-based Styx server framework                     *
+//*                                                                *
+//*  Copyright (C) 2009-2012, Bernd R. Fix                         *
+//*                                                                *
+//*  This program is free software; you can redistribute it and/or *
+//*  modify it under the terms of the GNU Lesser General Public    *
+//*  License (LGPL) as published by the Free Software Foundation;  *
+//*  either version 3 of the License, or (at your option) any      *
+//*  later version.                                                *
+//*                                                                *
+//*  This program is distributed in the hope that it will be use-  *
+//*  ful, but WITHOUT ANY WARRANTY; without even the implied       *
+//*  warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR       *
+//*  PURPOSE. See the GNU General Public License for more details. *
+//*                                                                *
+//*  You should have received a copy of the GNU General Public     *
+//*  Licenses along with this program; if not, see                 *
+//*  <http://www.gnu.org/licenses/>.                               *
+//*                                                                *
+
+package j9p.ns.handlers;
+
+///////////////////////////////////////////////////////////////////////////////
+/**
+ * <p>A <b>ReadQueue</b> holds reads that wait for data (pending reads
+ * of blocking process files or of watch file handles).</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+interface ReadQueue {
+
+	//=================================================================
+	/**
+	 * <p>Deadline of a pending read has passed.</p>
+	 * @param pr ProcessFile.PendingRead - expired read
+	 */
+	void expire (ProcessFile.PendingRead pr);
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Remove a pending read.</p>
+	 * @param pr ProcessFile.PendingRead - cancelled read
+	 */
+	void dequeue (ProcessFile.PendingRead pr);
+}
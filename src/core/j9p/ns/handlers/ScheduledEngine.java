@@ -0,0 +1,223 @@
+
+//******************************************************************
+//*   PGMID.        EVENT-DRIVEN NAMESPACE ENGINE.                 *
+//*   AUTHOR.       BERND R. FIX   >Y<                             *
+//*   DATE WRITTEN. 26/10/18.                                      *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.      *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE    *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.       *
+//******************************************************************
+//*                                                                *
+//*  StyxLib: Java-based Styx server framework                     *
+//*                                                                *
+//*  Copyright (C) 2009-2012, Bernd R. Fix                         *
+//*                                                                *
+//*  This program is free software; you can redistribute it and/or *
+//*  modify it under the terms of the GNU Lesser General Public    *
+//*  License (LGPL) as published by the Free Software Foundation;  *
+//*  either version 3 of the License, or (at your option) any      *
+//*  later version.                                                *
+//*                                                                *
+//*  This program is distributed in the hope that it will be use-  *
+//*  ful, but WITHOUT ANY WARRANTY; without even the implied       *
+//*  warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR       *
+//*  PURPOSE. See the GNU General Public License for more details. *
+//*                                                                *
+//*  You should have received a copy of the GNU General Public     *
+//*  Licenses along with this program; if not, see                 *
+//*  <http://www.gnu.org/licenses/>.                               *
+//*                                                                *
+//******************************************************************
+
+package j9p.ns.handlers;
+
+///////////////////////////////////////////////////////////////////////////////
+//import external declarations.
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+///////////////////////////////////////////////////////////////////////////////
+/**
+ * <p>A <b>ScheduledEngine</b> is an event-driven process: instead of
+ * running a loop in its own thread, the engine is a task on a scheduler
+ * shared by all engines of the server. The method <i>process()</i> is
+ * called whenever new input has been written to the associated file
+ * or a requested wakeup time has been reached.</p>
+ * <p>Engine objects are never started as threads; the lifecycle is
+ * controlled by <i>start()</i>, <i>pause()</i>, <i>proceed()</i> and
+ * <i>terminate()</i>. Wakeups of a suspended engine are delivered
+ * when the engine proceeds.</p>
+ * <p>The <i>process()</i> method must not block: input is read with
+ * <i>read(num,false)</i> and the output queue should use the "drop"
+ * or "error" overflow policy.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public abstract class ScheduledEngine extends ProcessAdaptor {
+
+	//=================================================================
+	/*
+	 * Shared scheduler:
+	 */
+	private static int numThreads = Runtime.getRuntime().availableProcessors();
+	private static ScheduledExecutorService scheduler = null;
+
+	//=================================================================
+	/*
+	 * Attributes:
+	 */
+	private AtomicInteger		wakeups = new AtomicInteger (0);	// pending wakeups
+	private volatile boolean	started = false;	// engine started?
+	private volatile boolean	deferred = false;	// wakeup while suspended
+	private ScheduledFuture<?>	timer = null;		// pending timed wakeup
+
+	//=================================================================
+	/**
+	 * <p>Set the number of scheduler threads shared by all engines.
+	 * Must be called before the first engine is started.</p>
+	 * @param num int - number of threads
+	 */
+	public static synchronized void setThreads (int num) {
+		numThreads = Math.max (1, num);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get the shared scheduler (created on first use).</p>
+	 * @return ScheduledExecutorService - engine scheduler
+	 */
+	private static synchronized ScheduledExecutorService getScheduler () {
+		if (scheduler == null) {
+			scheduler = Executors.newScheduledThreadPool (numThreads, new ThreadFactory() {
+				private int count = 0;
+				public synchronized Thread newThread (Runnable r) {
+					Thread t = new Thread (r, "Engine-" + (++count));
+					t.setDaemon (true);
+					return t;
+				}
+			});
+		}
+		return scheduler;
+	}
+
+	//=================================================================
+	//	Lifecycle methods.
+	//=================================================================
+	/**
+	 * <p>Start the engine on the shared scheduler (no thread is
+	 * created). The first call to <i>process()</i> happens
+	 * immediately.</p>
+	 */
+	public synchronized void start () {
+		if (started || !isActive())
+			return;
+		started = true;
+		wakeup();
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Terminate the engine: pending wakeups are dropped.</p>
+	 */
+	public void terminate () {
+		super.terminate();
+		synchronized (this) {
+			if (timer != null)
+				timer.cancel (false);
+			timer = null;
+		}
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Resume suspended engine and deliver wakeups that occurred
+	 * while the engine was suspended.</p> 
+	 */
+	public void proceed () {
+		super.proceed();
+		if (deferred) {
+			deferred = false;
+			wakeup();
+		}
+	}
+
+	//=================================================================
+	//	Scheduling methods.
+	//=================================================================
+	/**
+	 * <p>Request a call to <i>process()</i>. Multiple wakeups before
+	 * the call are merged; the engine never runs concurrently.</p>
+	 */
+	public void wakeup () {
+		if (!started || !isActive())
+			return;
+		if (wakeups.getAndIncrement() == 0)
+			getScheduler().execute (this);
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Request a call to <i>process()</i> after a delay; an earlier
+	 * timed wakeup request is replaced.</p>
+	 * @param delay long - delay (in milliseconds)
+	 */
+	protected synchronized void wakeupAfter (long delay) {
+		if (!isActive())
+			return;
+		if (timer != null)
+			timer.cancel (false);
+		timer = getScheduler().schedule (new Runnable() {
+			public void run () {
+				wakeup();
+			}
+		}, Math.max (0, delay), TimeUnit.MILLISECONDS);
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>New input has been queued: wake up engine.</p>
+	 */
+	protected void inputReady () {
+		wakeup();
+	}
+
+	//=================================================================
+	/**
+	 * <p>Scheduler task: call <i>process()</i> until all pending
+	 * wakeups are handled.</p>
+	 */
+	public final void run () {
+		int num = wakeups.get();
+		while (true) {
+			if (isActive()) {
+				// remember wakeup of suspended engine (and check
+				// again, in case the engine proceeded meanwhile).
+				if (isSuspended())
+					deferred = true;
+				if (!isSuspended()) {
+					deferred = false;
+					try {
+						process();
+					}
+					catch (RuntimeException e) {
+						e.printStackTrace();
+					}
+				}
+			}
+			// more wakeups while processing?
+			num = wakeups.addAndGet (-num);
+			if (num == 0)
+				return;
+		}
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Handle queued input and due work (called on a scheduler
+	 * thread; must not block).</p>
+	 */
+	protected abstract void process ();
+}
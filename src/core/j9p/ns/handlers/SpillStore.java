@@ -0,0 +1,230 @@
+
+//******************************************************************
+//*   PGMID.        MEMORY FILE SPILL STORE.                       *
+//*   AUTHOR.       BERND R. FIX   >Y<                             *
+//*   DATE WRITTEN. 26/10/18.                                      *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.      *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE    *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.       *
+//******************************************************************
+//*                                                                *
+//*  StyxLib: Java-based Styx server framework                     *
+//*                                                                *
+//*  Copyright (C) 2009-2012, Bernd R. Fix                         *
+//*                                                                *
+//*  This program is free software; you can redistribute it and/or *
+//*  modify it under the terms of the GNU Lesser General Public    *
+//*  License (LGPL) as published by the Free Software Foundation;  *
+//*  either version 3 of the License, or (at your option) any      *
+//*  later version.                                                *
+//*                                                                *
+//*  This program is distributed in the hope that it will be use-  *
+//*  ful, but WITHOUT ANY WARRANTY; without even the implied       *
+//*  warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR       *
+//*  PURPOSE. See the GNU General Public License for more details. *
+//*                                                                *
+//*  You should have received a copy of the GNU General Public     *
+//*  Licenses along with this program; if not, see                 *
+//*  <http://www.gnu.org/licenses/>.                               *
+//*                                                                *
+//******************************************************************
+
+package j9p.ns.handlers;
+
+///////////////////////////////////////////////////////////////////////////////
+//import external declarations.
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+
+
+///////////////////////////////////////////////////////////////////////////////
+/**
+ * <p>The <b>SpillStore</b> keeps track of the memory used by all memory
+ * files of the server. If the total exceeds the configured budget, the
+ * least recently used files are spilled to temporary files on disk;
+ * spilled files are read back into memory on their next access (or
+ * accessed on disk if they are too large).</p>
+ * <p>Without a budget (default) memory files are never spilled.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public class SpillStore {
+
+	//=================================================================
+	/**
+	 * <p>Temporary file with spilled content.</p>
+	 */
+	static class SpillFile {
+
+		//-------------------------------------------------------------
+		/*
+		 * Attributes:
+		 */
+		java.io.File		file;		// temporary file
+		RandomAccessFile	raf;		// opened file
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>Create a new (empty) spill file.</p>
+		 * @throws IOException - file can't be created
+		 */
+		SpillFile () throws IOException {
+			file = java.io.File.createTempFile ("j9p", ".spill");
+			file.deleteOnExit();
+			raf = new RandomAccessFile (file, "rw");
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>Read data at given position; missing data (holes)
+		 * read as zeros.</p>
+		 * @param pos long - file position
+		 * @param buf byte[] - buffer to be filled
+		 * @param ofs int - offset into buffer
+		 * @param len int - number of bytes
+		 * @throws IOException - read failed
+		 */
+		void read (long pos, byte[] buf, int ofs, int len) throws IOException {
+			raf.seek (pos);
+			while (len > 0) {
+				int n = raf.read (buf, ofs, len);
+				if (n < 0) {
+					// beyond end of file.
+					Arrays.fill (buf, ofs, ofs + len, (byte) 0);
+					break;
+				}
+				ofs += n;
+				len -= n;
+			}
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>Write data at given position.</p>
+		 * @param pos long - file position
+		 * @param buf byte[] - data
+		 * @param ofs int - offset into data
+		 * @param len int - number of bytes
+		 * @throws IOException - write failed
+		 */
+		void write (long pos, byte[] buf, int ofs, int len) throws IOException {
+			raf.seek (pos);
+			raf.write (buf, ofs, len);
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>Close and delete the spill file.</p>
+		 */
+		void discard () {
+			try {
+				raf.close();
+			}
+			catch (IOException e) {
+			}
+			file.delete();
+		}
+	}
+
+	//=================================================================
+	/*
+	 * Shared state:
+	 */
+	private static volatile long budget = 0;				// memory budget (0=unlimited)
+	private static long used = 0;							// memory used by files
+	private static LinkedHashMap<MemoryFile,MemoryFile> resident =	// files in memory (LRU)
+		new LinkedHashMap<MemoryFile,MemoryFile> (16, 0.75f, true);
+
+	//=================================================================
+	/**
+	 * <p>Set the memory budget for all memory files.</p>
+	 * <p>Spill files are created in the temporary directory of the
+	 * system ("java.io.tmpdir").</p>
+	 * @param bytes long - memory budget (0 = unlimited)
+	 */
+	public static synchronized void setBudget (long bytes) {
+		budget = Math.max (0, bytes);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Check if content of given size can be held in memory.</p>
+	 * @param bytes long - size of content
+	 * @return boolean - content fits into memory?
+	 */
+	static synchronized boolean fits (long bytes) {
+		return budget == 0 || bytes <= budget / 2;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>A file has been accessed.</p>
+	 * @param f MemoryFile - accessed file
+	 */
+	static void touch (MemoryFile f) {
+		if (budget == 0)
+			return;
+		synchronized (SpillStore.class) {
+			resident.get (f);
+		}
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>A file has allocated memory.</p>
+	 * @param f MemoryFile - memory file
+	 * @param bytes long - allocated memory
+	 */
+	static synchronized void allocated (MemoryFile f, long bytes) {
+		used += bytes;
+		if (!resident.containsKey (f))
+			resident.put (f, f);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>A file has released memory.</p>
+	 * @param f MemoryFile - memory file
+	 * @param bytes long - released memory
+	 * @param all boolean - all memory of the file released?
+	 */
+	static synchronized void released (MemoryFile f, long bytes, boolean all) {
+		used -= bytes;
+		if (all)
+			resident.remove (f);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Spill least recently used files until the memory used is
+	 * within the budget. Must not be called while holding the lock
+	 * of a memory file. The file in use is not selected: a file that
+	 * grows beyond half of the budget spills itself.</p>
+	 * @param current MemoryFile - file in use (not spilled)
+	 */
+	static void balance (MemoryFile current) {
+		// files that fail to spill stay resident (and counted) but
+		// are not selected again.
+		HashSet<MemoryFile> failed = new HashSet<MemoryFile>();
+		while (true) {
+			MemoryFile victim = null;
+			synchronized (SpillStore.class) {
+				if (budget == 0 || used <= budget)
+					return;
+				for (MemoryFile f : resident.keySet()) {
+					if (f != current && !failed.contains (f)) {
+						victim = f;
+						break;
+					}
+				}
+				if (victim == null)
+					return;
+			}
+			// a spilled file removes itself from the resident list.
+			if (!victim.spill())
+				failed.add (victim);
+		}
+	}
+}
@@ -0,0 +1,330 @@
+
+//******************************************************************
+//*   PGMID.        SYNTHETIC CONTENT DIRECTORY.                   *
+//*   AUTHOR.       BERND R. FIX   >Y<                             *
+//*   DATE WRITTEN. 26/10/18.                                      *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.      *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE    *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.       *
+//******************************************************************
+//*                                                                *
+//*  StyxLib: Java-based Styx server framework                     *
+//*                                                                *
+//*  Copyright (C) 2009-2012, Bernd R. Fix                         *
+//*                                                                *
+//*  This program is free software; you can redistribute it and/or *
+//*  modify it under the terms of the GNU Lesser General Public    *
+//*  License (LGPL) as published by the Free Software Foundation;  *
+//*  either version 3 of the License, or (at your option) any      *
+//*  later version.                                                *
+//*                                                                *
+//*  This program is distributed in the hope that it will be use-  *
+//*  ful, but WITHOUT ANY WARRANTY; without even the implied       *
+//*  warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR       *
+//*  PURPOSE. See the GNU General Public License for more details. *
+//*                                                                *
+//*  You should have received a copy of the GNU General Public     *
+//*  Licenses along with this program; if not, see                 *
+//*  <http://www.gnu.org/licenses/>.                               *
+//*                                                                *
+//******************************************************************
+
+package j9p.ns.handlers;
+
+///////////////////////////////////////////////////////////////////////////////
+//import external declarations.
+
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import j9p.ns.Entry;
+import j9p.ns.Permissions;
+
+
+///////////////////////////////////////////////////////////////////////////////
+/**
+ * <p>A <b>SyntheticDirectory</b> is a directory with generated children
+ * for load tests: it contains "count" synthetic files (or, if "depth"
+ * is greater than 1, synthetic sub-directories of the next lower
+ * depth). Children are named by prefix and index ("f0", "f1", ... or
+ * "d0", "d1", ...) and are generated on demand when they are looked
+ * up or listed, so the size of the directory doesn't depend on the
+ * available memory. Generated files share the content attributes of
+ * the directory entry but use different seeds: the seed of a child is
+ * derived from the seed of its parent and its index, so every generated
+ * entry of the tree gets its own seed.</p>
+ * <p>Generated children are cached (at most "cache" entries per
+ * directory); children in use (opened or referenced by a fid) are never
+ * dropped. Dropped children get a new identifier when they are accessed
+ * again. Entries can't be added or removed.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public class SyntheticDirectory extends LogicalDirectory {
+
+	//=================================================================
+	/*
+	 * Constants:
+	 */
+	private static final int DEFAULT_CACHE	= 1024;		// cached children per directory
+
+	//=================================================================
+	/**
+	 * <p>Snapshot of the generated children: children are generated
+	 * when they are accessed.</p>
+	 */
+	private static class Generated extends Snapshot {
+
+		//-------------------------------------------------------------
+		/*
+		 * Attributes:
+		 */
+		final SyntheticDirectory	dir;	// generating directory
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>Instantiate a new snapshot of generated children.</p>
+		 * @param dir SyntheticDirectory - generating directory
+		 */
+		Generated (SyntheticDirectory dir) {
+			super (null, dir.count);
+			this.dir = dir;
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>Get (generated) child at given position.</p>
+		 * @param pos int - position in snapshot
+		 * @return Entry - child at position
+		 */
+		Entry get (int pos) {
+			return dir.getChild (pos);
+		}
+	}
+
+	//=================================================================
+	/*
+	 * Attributes:
+	 */
+	private int				count = 10;		// number of children
+	private int				depth = 1;		// depth of generated tree
+	private long			seed = 0;		// seed of generated children
+	private int				limit = DEFAULT_CACHE;	// max. number of cached children
+	private SyntheticFile	template = null;	// configuration of files
+	private LinkedHashMap<Integer,Entry> cache;	// cached children (LRU order)
+
+	//=================================================================
+	/**
+	 * <p>Instantiate a new (un-initialized) synthetic directory.</p>
+	 */
+	public SyntheticDirectory () {
+		prepare (DEFAULT_CACHE);
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Instantiate a new synthetic sub-directory.</p>
+	 * @param name String - name of entry
+	 * @param perm Permissions - access permissions for directory
+	 * @param device String - mount handler
+	 * @param cfg SyntheticDirectory - directory with configuration
+	 * @param depth int - depth of generated tree
+	 * @param seed long - seed of generated children
+	 */
+	private SyntheticDirectory (String name, Permissions perm, String device, SyntheticDirectory cfg, int depth, long seed) {
+		super (name, perm, device);
+		count = cfg.count;
+		template = cfg.template;
+		this.depth = depth;
+		this.seed = seed;
+		prepare (cfg.limit);
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Set up the cache of generated children: the least recently
+	 * used child that is not in use is dropped if the cache is full.</p>
+	 * @param limit int - maximum number of cached children
+	 */
+	private void prepare (final int limit) {
+		this.limit = limit;
+		cache = new LinkedHashMap<Integer,Entry> (16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			protected boolean removeEldestEntry (Map.Entry<Integer,j9p.ns.Entry> eldest) {
+				if (size() <= limit)
+					return false;
+				// drop least recently used child that is not in use
+				// (opened or referenced by a fid).
+				Iterator<j9p.ns.Entry> it = values().iterator();
+				while (it.hasNext()) {
+					j9p.ns.Entry e = it.next();
+					if (!e.isInUse() && !e.isReferenced()) {
+						it.remove();
+						break;
+					}
+				}
+				// map already modified.
+				return false;
+			}
+		};
+	}
+
+	//=================================================================
+	/**
+	 * <p>Configure the directory: "count" (number of children),
+	 * "depth" (levels of the generated tree), "cache" (maximum number
+	 * of cached children) and the attributes of the generated files
+	 * (see <i>SyntheticFile</i>).</p>
+	 * @param p Hashtable<String,String> - parameter set
+	 * @return Process - started thread (or null)
+	 */
+	public Process startHandler (Hashtable<String,String> p) {
+		count = (int) Math.min (Integer.MAX_VALUE, SyntheticFile.parseSize (p.get ("count"), 10));
+		depth = (int) Math.max (1, Math.min (64, SyntheticFile.parseNumber (p.get ("depth"), 1)));
+		prepare ((int) Math.max (1, Math.min (Integer.MAX_VALUE, SyntheticFile.parseNumber (p.get ("cache"), DEFAULT_CACHE))));
+		template = new SyntheticFile();
+		template.startHandler (p);
+		seed = template.getSeed();
+		return null;
+	}
+
+	//=================================================================
+	//	Manage list of contained entries.
+	//=================================================================
+	/**
+	 * <p>Children are generated on demand: the directory is not
+	 * traversed as a whole.</p>
+	 * @return boolean - entries available?
+	 */
+	public boolean isPopulated () {
+		return false;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get number of entries in this directory.</p>
+	 * @return int - number of directory entries
+	 */
+	public int numEntries () {
+		return count;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get indexed entry in directory (generated on demand).</p>
+	 * @param pos int - directory index
+	 * @return Entry - selected entry
+	 */
+	public Entry getEntryAt (int pos) {
+		return getChild (pos);
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get named namespace entry: generated children are found
+	 * by their index.</p>
+	 * @param name String - name of entry (sub-directory)
+	 * @return Entry - associated namespace entry
+	 */
+	public Entry getEntryByName (String name) {
+		int idx = getIndex (name);
+		if (idx < 0)
+			return null;
+		Entry e = getChild (idx);
+		// reject non-canonical names ("f01").
+		return (e != null && name.equals (e.getName()) ? e : null);
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Adding entries is not supported.</p>
+	 * @param e Entry - entry to be added
+	 * @return boolean - successful operation
+	 */
+	public boolean add (Entry e) {
+		return false;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Adding entries is not supported.</p>
+	 * @param entries Entry[] - entries to be added
+	 * @return boolean - successful operation
+	 */
+	public boolean addAll (Entry[] entries) {
+		return false;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Removing entries is not supported.</p>
+	 * @param e Entry - entry to be removed
+	 * @return boolean - remove successful?
+	 */
+	public boolean remove (Entry e) {
+		return false;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get a snapshot of the directory entries: children in the
+	 * listed window are generated on demand.</p>
+	 * @return Snapshot - list of entries
+	 */
+	protected Snapshot snapshot () {
+		return new Generated (this);
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get the cached children of the directory (housekeeping).</p>
+	 * @return Snapshot - list of entries
+	 */
+	Snapshot entries () {
+		Entry[] res;
+		synchronized (cache) {
+			res = cache.values().toArray (new Entry [cache.size()]);
+		}
+		return new Snapshot (res, res.length);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get index of a generated child from its name.</p>
+	 * @param name String - name of entry
+	 * @return int - index of child (or -1)
+	 */
+	private int getIndex (String name) {
+		if (name == null || name.length() < 2 || name.charAt (0) != (depth > 1 ? 'd' : 'f'))
+			return -1;
+		try {
+			return Integer.parseInt (name.substring (1));
+		}
+		catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get the generated child at given position: the child is
+	 * generated if it is not cached (anymore).</p>
+	 * @param pos int - index of child
+	 * @return Entry - generated child (or null)
+	 */
+	Entry getChild (int pos) {
+		if (template == null || pos < 0 || pos >= count)
+			return null;
+		Entry e;
+		synchronized (cache) {
+			e = cache.get (pos);
+			if (e != null)
+				return e;
+			long s = SyntheticFile.mix (seed, pos);
+			Permissions perm = getPermissions();
+			if (depth > 1)
+				e = new SyntheticDirectory ("d" + pos, perm, DEFAULT_DEVICE, this, depth-1, s);
+			else {
+				// generated files are read-only.
+				Permissions filePerm = new Permissions (perm.getOwner(), perm.getGroup(), perm.getMode() & Permissions.PERM_444);
+				e = new SyntheticFile ("f" + pos, filePerm, DEFAULT_DEVICE, template, s);
+			}
+			cache.put (pos, e);
+		}
+		// register child with the namespace.
+		e.setParent (this);
+		return e;
+	}
+}
@@ -0,0 +1,272 @@
+
+//******************************************************************
+//*   PGMID.        SYNTHETIC CONTENT FILE.                        *
+//*   AUTHOR.       BERND R. FIX   >Y<                             *
+//*   DATE WRITTEN. 26/10/18.                                      *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.      *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE    *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.       *
+//******************************************************************
+//*                                                                *
+//*  StyxLib: Java-based Styx server framework                     *
+//*                                                                *
+//*  Copyright (C) 2009-2012, Bernd R. Fix                         *
+//*                                                                *
+//*  This program is free software; you can redistribute it and/or *
+//*  modify it under the terms of the GNU Lesser General Public    *
+//*  License (LGPL) as published by the Free Software Foundation;  *
+//*  either version 3 of the License, or (at your option) any      *
+//*  later version.                                                *
+//*                                                                *
+//*  This program is distributed in the hope that it will be use-  *
+//*  ful, but WITHOUT ANY WARRANTY; without even the implied       *
+//*  warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR       *
+//*  PURPOSE. See the GNU General Public License for more details. *
+//*                                                                *
+//*  You should have received a copy of the GNU General Public     *
+//*  Licenses along with this program; if not, see                 *
+//*  <http://www.gnu.org/licenses/>.                               *
+//*                                                                *
+//******************************************************************
+
+package j9p.ns.handlers;
+
+///////////////////////////////////////////////////////////////////////////////
+//import external declarations.
+
+import java.util.Hashtable;
+import j9p.ns.File;
+import j9p.ns.Permissions;
+
+
+///////////////////////////////////////////////////////////////////////////////
+/**
+ * <p>A <b>SyntheticFile</b> is a namespace entry with generated content
+ * for load tests: the content is computed on the fly for every read
+ * and has no backing storage, so files of any size (up to terabytes)
+ * can be published.</p>
+ * <p>The content is either all zeros, a deterministic pseudo-random
+ * byte sequence (depending on the seed and the position only) or a
+ * repeating text. An optional latency delays every read. Data written
+ * to the file is discarded.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public class SyntheticFile extends File {
+
+	//=================================================================
+	/*
+	 * Content patterns:
+	 */
+	public static final int PATTERN_ZERO	= 0;	// all zeros
+	public static final int PATTERN_RANDOM	= 1;	// pseudo-random bytes
+	public static final int PATTERN_TEXT	= 2;	// repeating text
+
+	//=================================================================
+	/*
+	 * Attributes:
+	 */
+	private long	size = 0;			// size of content
+	private int		pattern = PATTERN_ZERO;	// content pattern
+	private long	seed = 0;			// seed for random content
+	private byte[]	text = null;		// text for repeating content
+	private long	latency = 0;		// delay of a read (msec)
+
+	//=================================================================
+	/**
+	 * <p>Instantiate a new (un-initialized) synthetic file.</p>
+	 */
+	public SyntheticFile () {
+		super();
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Instantiate a new synthetic file with the configuration
+	 * of another file.</p>
+	 * @param name String - name of entry
+	 * @param perm Permissions - access permissions for file
+	 * @param device String - mount handler
+	 * @param template SyntheticFile - file with configuration
+	 * @param seed long - seed for random content
+	 */
+	public SyntheticFile (String name, Permissions perm, String device, SyntheticFile template, long seed) {
+		super (name, perm, device);
+		size = template.size;
+		pattern = template.pattern;
+		text = template.text;
+		latency = template.latency;
+		this.seed = seed;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Configure the file: "size" (bytes; suffix "K", "M", "G" or
+	 * "T" allowed), "pattern" ("zero", "random" or "text"), "seed"
+	 * (random content), "text" (repeated text) and "latency" (delay
+	 * of a read in msec).</p>
+	 * @param p Hashtable<String,String> - parameter set
+	 * @return Process - started thread (or null)
+	 */
+	public Process startHandler (Hashtable<String,String> p) {
+		size = parseSize (p.get ("size"), 0);
+		seed = parseNumber (p.get ("seed"), 0);
+		latency = parseNumber (p.get ("latency"), 0);
+		String val = p.get ("pattern");
+		if ("random".equals (val))
+			pattern = PATTERN_RANDOM;
+		else if ("text".equals (val))
+			pattern = PATTERN_TEXT;
+		else
+			pattern = PATTERN_ZERO;
+		val = p.get ("text");
+		if (val == null || val.length() == 0)
+			val = "The quick brown fox jumps over the lazy dog.\n";
+		text = val.getBytes();
+		return null;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get seed of random content.</p>
+	 * @return long - content seed
+	 */
+	long getSeed () {
+		return seed;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Parse a size value with optional unit suffix (K,M,G,T);
+	 * negative sizes and sizes that exceed the range of a long
+	 * value are rejected (default value).</p>
+	 * @param val String - size value (or null)
+	 * @param def long - default value
+	 * @return long - size
+	 */
+	static long parseSize (String val, long def) {
+		if (val == null || val.length() == 0)
+			return def;
+		int shift = 0;
+		switch (Character.toUpperCase (val.charAt (val.length()-1))) {
+			case 'K': shift = 10; break;
+			case 'M': shift = 20; break;
+			case 'G': shift = 30; break;
+			case 'T': shift = 40; break;
+		}
+		if (shift > 0)
+			val = val.substring (0, val.length()-1);
+		long num = parseNumber (val, -1);
+		if (num < 0 || num > (Long.MAX_VALUE >> shift))
+			return def;
+		return num << shift;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Parse a plain (signed) number.</p>
+	 * @param val String - number value (or null)
+	 * @param def long - default value
+	 * @return long - number
+	 */
+	static long parseNumber (String val, long def) {
+		if (val == null)
+			return def;
+		try {
+			return Long.parseLong (val.trim());
+		}
+		catch (NumberFormatException e) {
+			return def;
+		}
+	}
+
+	//=================================================================
+	/**
+	 * <p>Read entry content starting at offset for given number
+	 * of bytes.</p>
+	 * @param hdl Handle - handle to opened file
+	 * @param offset long - offset into entry content
+	 * @param count int - number of bytes to be read
+	 * @param fmt Formatter - protocol-specific entry representation
+	 * @return byte[] - read content
+	 */
+	public byte[] read (Handle hdl, long offset, int count, AttributeHandler fmt) {
+		// simulate slow source.
+		if (latency > 0) {
+			try {
+				Thread.sleep (latency);
+			}
+			catch (InterruptedException e) {
+				// operation flushed.
+				return null;
+			}
+		}
+		// check bounds.
+		if (offset < 0 || offset >= size || count <= 0)
+			return null;
+		int num = (int) Math.min (size - offset, count);
+		byte[] res = new byte [num];
+
+		// generate content.
+		switch (pattern) {
+			case PATTERN_RANDOM: {
+				long word = offset >>> 3;
+				long val = mix (seed, word);
+				for (int n = 0; n < num; n++) {
+					long pos = offset + n;
+					if ((pos >>> 3) != word) {
+						word = pos >>> 3;
+						val = mix (seed, word);
+					}
+					res[n] = (byte) (val >>> ((pos & 7) << 3));
+				}
+				break;
+			}
+			case PATTERN_TEXT: {
+				int pos = (int) (offset % text.length);
+				for (int n = 0; n < num; ) {
+					int len = Math.min (num - n, text.length - pos);
+					System.arraycopy (text, pos, res, n, len);
+					n += len;
+					pos = 0;
+				}
+				break;
+			}
+		}
+		return res;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Compute the pseudo-random value of an 8-byte word of the
+	 * content (SplitMix64 finalizer). It also derives the seeds
+	 * of generated entries from the seed of their parent.</p>
+	 * @param seed long - content seed
+	 * @param word long - index of word
+	 * @return long - content of word
+	 */
+	static long mix (long seed, long word) {
+		long z = seed + (word + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Write entry content: data is discarded.</p>
+	 * @param hdl Handle - handle to opened file
+	 * @param data byte[] - data to be written
+	 * @param offset long - offset into entry content
+	 * @param count int - number of bytes to be written
+	 * @return int - number of bytes written
+	 */
+	public int write (Handle hdl, byte[] data, long offset, int count) {
+		return count;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get size of entry.</p>
+	 * @return long - entry size
+	 */
+	public long getSize () {
+		return size;
+	}
+}
@@ -0,0 +1,403 @@
+
+//******************************************************************
+//*   PGMID.        NAMESPACE CHANGE NOTIFICATION FILE.            *
+//*   AUTHOR.       BERND R. FIX   >Y<                             *
+//*   DATE WRITTEN. 26/10/18.                                      *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.      *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE    *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.       *
+//******************************************************************
+//*                                                                *
+//*  StyxLib: Java-based Styx server framework                     *
+//*                                                                *
+//*  Copyright (C) 2009-2012, Bernd R. Fix                         *
+//*                                                                *
+//*  This program is free software; you can redistribute it and/or *
+//*  modify it under the terms of the GNU Lesser General Public    *
+//*  License (LGPL) as published by the Free Software Foundation;  *
+//*  either version 3 of the License, or (at your option) any      *
+//*  later version.                                                *
+//*                                                                *
+//*  This program is distributed in the hope that it will be use-  *
+//*  ful, but WITHOUT ANY WARRANTY; without even the implied       *
+//*  warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR       *
+//*  PURPOSE. See the GNU General Public License for more details. *
+//*                                                                *
+//*  You should have received a copy of the GNU General Public     *
+//*  Licenses along with this program; if not, see                 *
+//*  <http://www.gnu.org/licenses/>.                               *
+//*                                                                *
+//******************************************************************
+
+package j9p.ns.handlers;
+
+///////////////////////////////////////////////////////////////////////////////
+//import external declarations.
+
+import java.util.Hashtable;
+import java.util.LinkedList;
+import java.util.concurrent.CopyOnWriteArrayList;
+import j9p.auth.Credential;
+import j9p.ns.Directory;
+import j9p.ns.Entry;
+import j9p.ns.File;
+import j9p.ns.Permissions;
+import j9p.util.Blob;
+
+
+///////////////////////////////////////////////////////////////////////////////
+/**
+ * <p>A <b>WatchFile</b> reports changes in the directory it is located
+ * in (and in all directories below it). A read on the file waits until
+ * at least one change event is available and returns a batch of events,
+ * one event per line:</p>
+ * <pre>
+ *   c &lt;path&gt;     entry created (added)
+ *   r &lt;path&gt;     entry removed
+ *   m &lt;path&gt;     entry modified
+ *   o -          events lost (queue overflow)
+ * </pre>
+ * <p>The path is relative to the watched directory. Each open file
+ * handle has its own event queue, so every reader receives all events
+ * that happened after it opened the file. Read offsets are ignored.
+ * Waiting reads are pending reads (see {@link ProcessFile.PendingRead})
+ * that are completed by the thread posting the next event, so no server
+ * thread is parked; a waiting read is terminated by a flush of the
+ * operation.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public class WatchFile extends File implements Directory.Watcher {
+
+	//=================================================================
+	/**
+	 * <p>Default number of queued events per reader.</p>
+	 */
+	private static final int DEFAULT_QUEUE = 256;
+
+	//=================================================================
+	/**
+	 * <p>File handle with an event queue.</p>
+	 */
+	protected class WatchHandle extends Handle implements ReadQueue {
+
+		//-------------------------------------------------------------
+		/*
+		 * Attributes:
+		 */
+		LinkedList<String> events = new LinkedList<String>();	// pending events
+		boolean overflow = false;								// events dropped?
+		LinkedList<ProcessFile.PendingRead> waiting = new LinkedList<ProcessFile.PendingRead>();	// waiting reads
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>Queue an event for the reader and complete the first
+		 * waiting read.</p>
+		 * @param ev String - event line
+		 */
+		void post (String ev) {
+			ProcessFile.PendingRead pr = null;
+			byte[] data = null;
+			synchronized (this) {
+				if (events.size() >= maxQueue) {
+					// drop oldest event.
+					events.removeFirst();
+					overflow = true;
+				}
+				events.addLast (ev);
+				if (!waiting.isEmpty()) {
+					pr = waiting.removeFirst();
+					data = take (pr.count);
+				}
+			}
+			// complete read outside the lock.
+			if (pr != null)
+				pr.complete (data);
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>Return as many (complete) event lines as fit into the
+		 * given size.</p>
+		 * @param size int - maximum number of bytes
+		 * @return byte[] - event lines (or null if no event is queued)
+		 */
+		synchronized byte[] take (int size) {
+			if (events.isEmpty() && !overflow)
+				return null;
+			Blob res = new Blob();
+			int count = 0;
+			if (overflow) {
+				res.putArray ("o -\n".getBytes());
+				count = 4;
+				overflow = false;
+			}
+			while (!events.isEmpty()) {
+				byte[] line = events.getFirst().getBytes();
+				if (count + line.length > size) {
+					// return (truncated) event if it is the only one.
+					if (count == 0) {
+						events.removeFirst();
+						byte[] trunc = new byte [size];
+						System.arraycopy (line, 0, trunc, 0, size);
+						return trunc;
+					}
+					break;
+				}
+				res.putArray (line);
+				count += line.length;
+				events.removeFirst();
+			}
+			return res.asByteArray (false);
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>Read events: complete the read immediately if events
+		 * are queued, otherwise wait for the next event.</p>
+		 * @param count int - maximum number of bytes
+		 * @param pr ProcessFile.PendingRead - read operation
+		 */
+		void read (int count, ProcessFile.PendingRead pr) {
+			byte[] data;
+			synchronized (this) {
+				data = take (count);
+				if (data == null) {
+					pr.file = this;
+					pr.count = count;
+					waiting.addLast (pr);
+					return;
+				}
+			}
+			pr.complete (data);
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>Waiting reads have no deadline: complete with the
+		 * queued events (if still waiting).</p>
+		 * @param pr ProcessFile.PendingRead - expired read
+		 */
+		public void expire (ProcessFile.PendingRead pr) {
+			byte[] data;
+			synchronized (this) {
+				if (!waiting.remove (pr))
+					return;
+				data = take (pr.count);
+			}
+			pr.complete (data);
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>Remove a waiting read.</p>
+		 * @param pr ProcessFile.PendingRead - cancelled read
+		 */
+		public synchronized void dequeue (ProcessFile.PendingRead pr) {
+			waiting.remove (pr);
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>Release handle (stop receiving events); waiting reads
+		 * are completed without data.</p>
+		 */
+		public void release () {
+			readers.remove (this);
+			LinkedList<ProcessFile.PendingRead> list;
+			synchronized (this) {
+				list = waiting;
+				waiting = new LinkedList<ProcessFile.PendingRead>();
+			}
+			for (ProcessFile.PendingRead pr : list)
+				pr.complete (null);
+		}
+	}
+
+	//=================================================================
+	/*
+	 * Attributes:
+	 */
+	protected int maxQueue = DEFAULT_QUEUE;						// max. queued events
+	protected CopyOnWriteArrayList<WatchHandle> readers;		// open handles
+
+	//=================================================================
+	/**
+	 * <p>Instantiate a new watch file in the namespace.</p>
+	 * @param name String - name of entry
+	 * @param perm Permissions - access permissions for file
+	 * @param device String - mount handler
+	 */
+	public WatchFile (String name, Permissions perm, String device) {
+		super (name, perm, device);
+		readers = new CopyOnWriteArrayList<WatchHandle>();
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Protected constructor for uninitialized entry.</p>
+	 */
+	public WatchFile () {
+		readers = new CopyOnWriteArrayList<WatchHandle>();
+	}
+
+	//=================================================================
+	/**
+	 * <p>Read configuration: the optional "queue" attribute
+	 * specifies the maximum number of queued events per reader.</p>
+	 * @param p Hashtable<String,String> - parameter set
+	 * @return Process - started thread (or null)
+	 */
+	public Process startHandler (Hashtable<String,String> p) {
+		String queue = p.get ("queue");
+		if (queue != null)
+			maxQueue = Math.max (1, Integer.parseInt (queue));
+		return null;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Set parent reference for namespace entry and start
+	 * watching the parent directory.</p>
+	 * @param d Directory - parent directory
+	 * @return boolean - successful operation?
+	 */
+	public boolean setParent (Directory d) {
+		if (!super.setParent (d))
+			return false;
+		d.addWatcher (this);
+		return true;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Remove entry from namespace (and stop watching).</p>
+	 * @return boolean successful operation?
+	 */
+	public boolean remove () {
+		Directory dir = parent;
+		if (!super.remove())
+			return false;
+		dir.removeWatcher (this);
+		return true;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Namespace change event: queue event for all readers.</p>
+	 * @param type int - type of event (EV_???)
+	 * @param e Entry - changed entry
+	 * @param dir Directory - watched directory
+	 */
+	public void changed (int type, Entry e, Directory dir) {
+		// skip events about ourself or without readers.
+		if (e == this || readers.isEmpty())
+			return;
+
+		// assemble event line.
+		StringBuffer buf = new StringBuffer();
+		switch (type) {
+			case Directory.EV_CREATE: buf.append ("c "); break;
+			case Directory.EV_REMOVE: buf.append ("r "); break;
+			default:                  buf.append ("m "); break;
+		}
+		buf.append (getPath (e, dir)).append ('\n');
+		String ev = buf.toString();
+
+		// post to all readers (iterates a snapshot of the list).
+		for (WatchHandle hdl : readers)
+			hdl.post (ev);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get path of entry relative to watched directory.</p>
+	 * @param e Entry - changed entry
+	 * @param dir Directory - watched directory
+	 * @return String - relative path
+	 */
+	private static String getPath (Entry e, Directory dir) {
+		String path = e.getName();
+		for (Directory d = e.getParent(); d != null && d != dir; d = d.getParent())
+			path = d.getName() + "/" + path;
+		return path;
+	}
+
+	//=================================================================
+	//	methods for open, read, write and size
+	//=================================================================
+	/**
+	 * <p>Open file for user with credential for access.</p>
+	 * @param cr Credential - authenticated user credential
+	 * @param mode int - access mode
+	 * @return Handle - handle to opened file
+	 */
+	public Handle open (Credential cr, int mode) {
+
+		// try to open entry.
+		Handle hdl = super.open (cr, mode);
+		if (hdl.rc != Handle.RC_OK)
+			// open failed on basic level
+			return hdl;
+
+		// create our own handle.
+		WatchHandle wHdl = new WatchHandle();
+		wHdl.rc = hdl.rc;
+		wHdl.forRead = hdl.forRead;
+		wHdl.forWrite = hdl.forWrite;
+		wHdl.userCredential = hdl.userCredential;
+		readers.add (wHdl);
+		return wHdl;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Read queued events without waiting (callers that can't
+	 * defer the reply).</p>
+	 * @param hdl Handle - handle to opened file
+	 * @param offset long - offset into entry content (ignored)
+	 * @param count int - number of bytes to be read
+	 * @param fmt Formatter - protocol-specific entry representation
+	 * @return byte[] - event lines (or null if no event is queued)
+	 */
+	public byte[] read (Handle hdl, long offset, int count, AttributeHandler fmt) {
+		if (!(hdl instanceof WatchHandle) || count <= 0)
+			return null;
+		return ((WatchHandle) hdl).take (count);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Read events as a pending read: the read is completed
+	 * immediately if events are queued; otherwise it is completed by
+	 * the thread that posts the next event.</p>
+	 * @param hdl Handle - handle to opened file
+	 * @param offset long - offset into entry content (ignored)
+	 * @param count int - number of bytes to be read
+	 * @param pr ProcessFile.PendingRead - read operation
+	 */
+	public void read (Handle hdl, long offset, int count, ProcessFile.PendingRead pr) {
+		if (!(hdl instanceof WatchHandle) || count <= 0) {
+			pr.complete (null);
+			return;
+		}
+		((WatchHandle) hdl).read (count, pr);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Write entry content: not supported.</p>
+	 * @param hdl Handle - handle to opened file
+	 * @param data byte[] - data to be written
+	 * @param offset long - offset into entry content
+	 * @param count int - number of bytes to be written
+	 * @return int - number of bytes written
+	 */
+	public int write (Handle hdl, byte[] data, long offset, int count) {
+		return 0;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get size of entry.</p>
+	 * @return long - entry size
+	 */
+	public long getSize () {
+		return 0;
+	}
+}
@@ -0,0 +1,424 @@
+
+//******************************************************************
+//*   PGMID.        PRECOMPILED NAMESPACE IMAGE.                   *
+//*   AUTHOR.       BERND R. FIX   >Y<                             *
+//*   DATE WRITTEN. 26/10/18.                                      *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.      *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE    *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.       *
+//******************************************************************
+//*                                                                *
+//*  StyxLib: Java-based Styx server framework                     *
+//*                                                                *
+//*  Copyright (C) 2009-2012, Bernd R. Fix                         *
+//*                                                                *
+//*  This program is free software; you can redistribute it and/or *
+//*  modify it under the terms of the GNU Lesser General Public    *
+//*  License (LGPL) as published by the Free Software Foundation;  *
+//*  either version 3 of the License, or (at your option) any      *
+//*  later version.                                                *
+//*                                                                *
+//*  This program is distributed in the hope that it will be use-  *
+//*  ful, but WITHOUT ANY WARRANTY; without even the implied       *
+//*  warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR       *
+//*  PURPOSE. See the GNU General Public License for more details. *
+//*                                                                *
+//*  You should have received a copy of the GNU General Public     *
+//*  Licenses along with this program; if not, see                 *
+//*  <http://www.gnu.org/licenses/>.                               *
+//*                                                                *
+//******************************************************************
+
+package j9p.server;
+
+///////////////////////////////////////////////////////////////////////////////
+//import external declarations.
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Hashtable;
+import java.util.Vector;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.XMLReaderFactory;
+import j9p.util.Base64;
+
+
+///////////////////////////////////////////////////////////////////////////////
+/**
+ * <p>A <b>NamespaceImage</b> is a precompiled (binary) form of a namespace
+ * configuration file. Loading an image skips the XML parsing and the
+ * Base64 decoding of file contents; the elements are still replayed as
+ * SAX events into the NamespaceManager, so handlers are instantiated and
+ * started as for the XML configuration. The image consists of four
+ * sections:</p>
+ * <ul>
+ * <li><b>Header</b>: magic, format version and the sizes of the following
+ *     sections.</li>
+ * <li><b>String table</b>: all element names, attribute names and values
+ *     of the configuration; every string is stored only once.</li>
+ * <li><b>Entry table</b>: flat list of element records (start or end of an
+ *     element) that reference the string table.</li>
+ * <li><b>Content blobs</b>: raw (decoded) content of files.</li>
+ * </ul>
+ * <p>The string and entry tables are memory-mapped when read; file
+ * contents are copied from the blob section with positional reads
+ * (blob offsets are 64-bit).</p>
+ * <p>Usage: <tt>NamespaceImage &lt;namespace config&gt; &lt;image file&gt;</tt>
+ * compiles an XML configuration into an image file.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public class NamespaceImage extends DefaultHandler {
+
+	//=================================================================
+	/*
+	 * Constants:
+	 */
+	private static final int MAGIC		= 0x4A395049;	// "J9PI"
+	private static final int VERSION	= 1;			// format version
+	private static final int REC_START	= 1;			// start of element
+	private static final int REC_END	= 2;			// end of element
+	private static final int HEADER_SIZE = 28;			// size of image header
+
+	//=================================================================
+	/*
+	 * Attributes:
+	 */
+	private Hashtable<String,Integer> index = null;		// string -> table index
+	private Vector<String> strings = null;				// string table
+	private DataOutputStream records = null;			// entry table
+	private ByteArrayOutputStream recBuf = null;		// entry table buffer
+	private int numRecords = 0;							// number of records
+	private DataOutputStream blobs = null;				// content blobs
+	private ByteArrayOutputStream blobBuf = null;		// content blob buffer
+	private StringBuffer pcData = null;					// PCDATA of current file
+
+	//=================================================================
+	/**
+	 * <p>Instantiate a new (empty) image compiler.</p>
+	 */
+	protected NamespaceImage () {
+		index = new Hashtable<String,Integer>();
+		strings = new Vector<String>();
+		recBuf = new ByteArrayOutputStream();
+		records = new DataOutputStream (recBuf);
+		blobBuf = new ByteArrayOutputStream();
+		blobs = new DataOutputStream (blobBuf);
+	}
+
+	//=================================================================
+	/**
+	 * <p>Check if a file is a namespace image.</p>
+	 * @param fname String - name of file
+	 * @return boolean - file is a namespace image?
+	 */
+	public static boolean isImage (String fname) {
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream (new FileInputStream (fname));
+			return in.readInt() == MAGIC;
+		}
+		catch (IOException e) {
+			return false;
+		}
+		finally {
+			try {
+				if (in != null)
+					in.close();
+			} catch (IOException e) {}
+		}
+	}
+
+	//=================================================================
+	/**
+	 * <p>Compile a namespace configuration file into an image.</p>
+	 * @param config String - name of XML configuration file
+	 * @param image String - name of image file
+	 * @throws Exception - compilation failed
+	 */
+	public static void compile (String config, String image) throws Exception {
+
+		// parse configuration file.
+		NamespaceImage img = new NamespaceImage();
+		InputSource src = new InputSource (new FileInputStream (config));
+		XMLReader rdr = XMLReaderFactory.createXMLReader();
+		rdr.setContentHandler (img);
+		rdr.parse (src);
+
+		// write image file.
+		DataOutputStream out = new DataOutputStream (
+			new BufferedOutputStream (new FileOutputStream (image))
+		);
+		try {
+			img.write (out);
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Write image to output stream.</p>
+	 * @param out DataOutputStream - image output
+	 * @throws IOException - write failed
+	 */
+	private void write (DataOutputStream out) throws IOException {
+		records.flush();
+		blobs.flush();
+
+		// header
+		out.writeInt  (MAGIC);
+		out.writeInt  (VERSION);
+		out.writeInt  (strings.size());
+		out.writeInt  (numRecords);
+		out.writeInt  (recBuf.size());
+		out.writeLong (blobBuf.size());
+
+		// string table
+		for (String str : strings) {
+			byte[] data = str.getBytes ("UTF-8");
+			out.writeInt (data.length);
+			out.write (data);
+		}
+		// entry table and content blobs
+		recBuf.writeTo (out);
+		blobBuf.writeTo (out);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get index of string in string table (add new strings).</p>
+	 * @param str String - string to be interned
+	 * @return int - index into string table
+	 */
+	private int intern (String str) {
+		Integer idx = index.get (str);
+		if (idx == null) {
+			idx = strings.size();
+			strings.add (str);
+			index.put (str, idx);
+		}
+		return idx;
+	}
+
+	//=================================================================
+	//	Compile XML configuration (SAX event handlers)
+	//=================================================================
+	/**
+	 * <p>Start of new Element in XML.</p>
+	 * @param namespaceURI String -
+	 * @param localName String - local name
+	 * @param qName String - qualified name
+	 * @param attrs Attributes - element attributes
+	 */
+	public void startElement (String namespaceURI, String localName,
+							  String qName, Attributes attrs
+	) throws SAXException {
+		// get entity name
+		String name = ( "".equals( localName ) ) ? qName : localName;
+		try {
+			// write element record
+			int count = attrs.getLength();
+			records.writeByte (REC_START);
+			records.writeInt (intern (name));
+			records.writeInt (count);
+			for (int n = 0; n < count; n++) {
+				records.writeInt (intern (attrs.getQName (n)));
+				records.writeInt (intern (attrs.getValue (n)));
+			}
+			numRecords++;
+		}
+		catch (IOException e) {
+			throw new SAXException (e);
+		}
+		// collect file content.
+		if (name.equals ("File"))
+			pcData = new StringBuffer();
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>End of Element in XML.</p>
+	 * @param namespaceURI String -
+	 * @param localName String - local name
+	 * @param qName String - qualified name
+	 */
+	public void endElement (String namespaceURI, String localName, String qName)
+	throws SAXException {
+		// get entity name
+		String name = ( "".equals( localName ) ) ? qName : localName;
+		try {
+			// write element record
+			records.writeByte (REC_END);
+			records.writeInt (intern (name));
+			if (name.equals ("File")) {
+				// decode and store file content.
+				byte[] content = Base64.toArray (pcData.toString());
+				if (content == null)
+					records.writeInt (-1);
+				else {
+					records.writeInt (content.length);
+					records.writeLong (blobs.size());
+					blobs.write (content);
+				}
+				pcData = null;
+			}
+			numRecords++;
+		}
+		catch (IOException e) {
+			throw new SAXException (e);
+		}
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Collect PCDATA between tags.</p>
+	 * @param ch char[] - character array of data
+	 * @param start int - offset into array
+	 * @param length int - length of data
+	 */
+	public void characters (char[] ch, int start, int length) {
+		// are we collecting PCDATA?
+		if (pcData == null)
+			return;
+		// append new data
+		pcData.append (ch, start, length);
+	}
+
+	//=================================================================
+	//	Load namespace image
+	//=================================================================
+	/**
+	 * <p>Replay the element records of a (memory-mapped) namespace
+	 * image into a namespace manager.</p>
+	 * @param fname String - name of image file
+	 * @param mgr NamespaceManager - receiver of image elements
+	 * @throws Exception - invalid image or failed replay
+	 */
+	public static void replay (String fname, NamespaceManager mgr) throws Exception {
+		RandomAccessFile f = new RandomAccessFile (fname, "r");
+		try {
+			replay (f.getChannel(), mgr);
+		}
+		finally {
+			f.close();
+		}
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Replay the element records of a namespace image into a
+	 * namespace manager. String and entry table are mapped into
+	 * memory (limited to 2GB); content blobs are read from the
+	 * file channel.</p>
+	 * @param ch FileChannel - channel of image file
+	 * @param mgr NamespaceManager - receiver of image elements
+	 * @throws Exception - invalid image or failed replay
+	 */
+	private static void replay (FileChannel ch, NamespaceManager mgr) throws Exception {
+
+		// map tables (everything before the content blobs).
+		MappedByteBuffer buf = ch.map (FileChannel.MapMode.READ_ONLY, 0, Math.min (ch.size(), HEADER_SIZE));
+		if (buf.limit() < HEADER_SIZE || buf.getInt() != MAGIC)
+			throw new IOException ("Not a namespace image");
+		if (buf.getInt() != VERSION)
+			throw new IOException ("Unsupported namespace image version");
+		int numStrings = buf.getInt();
+		int numRecs = buf.getInt();
+		int recSize = buf.getInt();
+		long blobSize = buf.getLong();
+		long blobBase = ch.size() - blobSize;
+		if (blobSize < 0 || blobBase < HEADER_SIZE)
+			throw new IOException ("Corrupted namespace image");
+		if (blobBase > Integer.MAX_VALUE)
+			throw new IOException ("Namespace image tables too large");
+		buf = ch.map (FileChannel.MapMode.READ_ONLY, 0, blobBase);
+		buf.position (HEADER_SIZE);
+
+		// read string table
+		String[] table = new String [numStrings];
+		for (int n = 0; n < numStrings; n++) {
+			byte[] data = new byte [buf.getInt()];
+			buf.get (data);
+			table[n] = new String (data, "UTF-8");
+		}
+		if (buf.position() + (long) recSize != blobBase)
+			throw new IOException ("Corrupted namespace image");
+
+		// replay entry table
+		for (int n = 0; n < numRecs; n++) {
+			int type = buf.get();
+			String name = table[buf.getInt()];
+			if (type == REC_START) {
+				int count = buf.getInt();
+				AttributesImpl attrs = new AttributesImpl();
+				for (int k = 0; k < count; k++) {
+					String key = table[buf.getInt()];
+					String val = table[buf.getInt()];
+					attrs.addAttribute ("", key, key, "CDATA", val);
+				}
+				mgr.startElement ("", name, name, attrs);
+			}
+			else if (type == REC_END) {
+				if (name.equals ("File")) {
+					// copy file content from blob.
+					byte[] content = null;
+					int size = buf.getInt();
+					if (size >= 0) {
+						long ofs = buf.getLong();
+						if (ofs < 0 || ofs + size > blobSize)
+							throw new IOException ("Corrupted namespace image");
+						content = new byte [size];
+						ByteBuffer dst = ByteBuffer.wrap (content);
+						while (dst.hasRemaining())
+							if (ch.read (dst, blobBase + ofs + dst.position()) < 0)
+								throw new IOException ("Truncated namespace image");
+					}
+					mgr.setImageContent (content);
+				}
+				mgr.endElement ("", name, name);
+			}
+			else
+				throw new IOException ("Corrupted namespace image");
+		}
+	}
+
+	//=================================================================
+	/**
+	 * <p>Compile a namespace configuration into an image file.</p>
+	 * @param argv String[] - command line arguments
+	 */
+	public static void main (String[] argv) {
+		if (argv.length != 2) {
+			System.err.println ("Usage: NamespaceImage <namespace config> <image file>");
+			System.err.flush();
+			return;
+		}
+		try {
+			long start = System.currentTimeMillis();
+			compile (argv[0], argv[1]);
+			System.out.println ("Compiled '" + argv[0] + "' into '" + argv[1] + "' in "
+				+ (System.currentTimeMillis() - start) + "ms.");
+		}
+		catch (Exception e) {
+			System.err.println ("Compilation failed: " + e.getMessage());
+			System.err.flush();
+		}
+	}
+}
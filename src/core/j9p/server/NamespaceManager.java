@@ -35,6 +35,8 @@ package j9p.server;
 //import external declarations.
 
 import java.io.FileInputStream;
+import java.lang.reflect.Constructor;
+import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Stack;
 import java.util.Vector;
@@ -45,16 +47,26 @@ import org.xml.sax.InputSource;
 import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.XMLReaderFactory;
 import org.xml.sax.helpers.DefaultHandler;
+import j9p.auth.Identities;
 import j9p.ns.Permissions;
 import j9p.ns.Directory;
 import j9p.ns.File;
 import j9p.ns.Namespace;
 import j9p.ns.Entry;
 import j9p.ns.handlers.LogicalDirectory;
+import j9p.ns.handlers.HashedDirectory;
+import j9p.ns.handlers.LazyDirectory;
+import j9p.ns.handlers.OverlayDirectory;
 import j9p.ns.handlers.LogicalFile;
+import j9p.ns.handlers.MemoryFile;
+import j9p.ns.handlers.DiskDirectory;
 import j9p.ns.handlers.DiskFile;
+import j9p.ns.handlers.CachedFile;
+import j9p.ns.handlers.SyntheticDirectory;
+import j9p.ns.handlers.SyntheticFile;
 import j9p.ns.handlers.Process;
 import j9p.ns.handlers.ProcessFile;
+import j9p.ns.handlers.WatchFile;
 import j9p.util.Base64;
 
 
@@ -83,13 +95,174 @@ public class NamespaceManager extends DefaultHandler {
 
 	//=================================================================
 	/**
-	 * <p>List of user-specific namespaces managed by the handler.</p> 
+	 * <p>An <b>EntryFactory</b> creates new (uninitialized) entry
+	 * handlers of a given type. Factories are looked up once per
+	 * type; creating entries of the predefined types doesn't use
+	 * reflection at all.</p>
 	 */
-	private Hashtable<String,Namespace> userNS = null;
+	public static interface EntryFactory {
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>Create a new (uninitialized) entry handler.</p>
+		 * @return Entry - new entry handler
+		 * @throws Exception - instantiation failed
+		 */
+		Entry newEntry () throws Exception;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Factory for entry handlers defined by class name in the
+	 * configuration (&lt;EntryType&gt;). The constructor of the
+	 * handler class is resolved only once.</p>
+	 */
+	private static class ClassFactory implements EntryFactory {
+
+		//-------------------------------------------------------------
+		/*
+		 * Attributes:
+		 */
+		private Constructor<?> ctor;		// default constructor of handler
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>Instantiate factory for handler class.</p>
+		 * @param cl Class<?> - handler class
+		 * @throws NoSuchMethodException - no default constructor
+		 */
+		ClassFactory (Class<?> cl) throws NoSuchMethodException {
+			ctor = cl.getConstructor();
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>Create a new (uninitialized) entry handler.</p>
+		 * @return Entry - new entry handler
+		 * @throws Exception - instantiation failed
+		 */
+		public Entry newEntry () throws Exception {
+			return (Entry) ctor.newInstance();
+		}
+	}
+
+	//=================================================================
+	/**
+	 * <p>Engine running for an entry of a namespace configuration
+	 * (and the configuration of the entry it was started for).</p>
+	 */
+	private static class Engine {
+
+		//-------------------------------------------------------------
+		/*
+		 * Attributes:
+		 */
+		Process proc;						// running engine
+		Entry entry;						// entry served by engine
+		Hashtable<String,String> params;	// parameters of entry
+		boolean adopted = false;			// taken over from active generation?
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>Instantiate a new engine reference.</p>
+		 * @param proc Process - running engine
+		 * @param entry Entry - entry served by engine
+		 * @param params Hashtable<String,String> - parameters of entry
+		 */
+		Engine (Process proc, Entry entry, Hashtable<String,String> params) {
+			this.proc = proc;
+			this.entry = entry;
+			this.params = params;
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>Check if an entry has the same configuration as the
+		 * entry of this engine (same type and parameters).</p>
+		 * @param e Entry - entry to be checked
+		 * @param p Hashtable<String,String> - parameters of entry
+		 * @return boolean - unchanged configuration?
+		 */
+		boolean sameConfig (Entry e, Hashtable<String,String> p) {
+			return entry.getClass() == e.getClass() && params.equals (p);
+		}
+	}
+
+	//=================================================================
 	/**
-	 * <p>List of running engines.</p>
+	 * <p>A <b>Generation</b> holds the set of namespaces (and the
+	 * engines running for their entries) built from one reading
+	 * of the configuration file. A generation that has been
+	 * replaced by a reload stays alive until all sessions attached
+	 * to its namespaces are gone.</p>
+	 */
+	private static class Generation {
+
+		//-------------------------------------------------------------
+		/*
+		 * Attributes:
+		 */
+		Hashtable<String,Namespace> userNS;		// user-specific namespaces
+		Hashtable<String,Engine> engines;		// running engines (by entry path)
+		int users = 0;							// number of attached sessions
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>Instantiate new generation with empty default
+		 * namespace (empty root directory).</p>
+		 */
+		Generation () {
+			userNS = new Hashtable<String,Namespace>();
+			engines = new Hashtable<String,Engine>();
+
+			// setup empty default namespace
+			Permissions perm = new Permissions ("sys", "sys", PERM_DIR_DEFAULT);
+			Directory root = new LogicalDirectory ("", perm, "|/");
+			userNS.put ("*", new Namespace (root));
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>Check if a namespace belongs to this generation.</p>
+		 * @param ns Namespace - namespace to be checked
+		 * @return boolean - namespace is part of generation?
+		 */
+		boolean contains (Namespace ns) {
+			return userNS.containsValue (ns);
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>Terminate all engines of this generation.</p>
+		 */
+		void terminate () {
+			for (Engine eng : engines.values())
+				eng.proc.terminate();
+			engines.clear();
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>Suspend all engines of this generation.</p>
+		 */
+		void pause () {
+			for (Engine eng : engines.values())
+				eng.proc.pause();
+		}
+		//-------------------------------------------------------------
+		/**
+		 * <p>Resume all engines of this generation.</p>
+		 */
+		void proceed () {
+			for (Engine eng : engines.values())
+				eng.proc.proceed();
+		}
+	}
+
+	//=================================================================
+	/*
+	 * Attributes:
 	 */
-	private Vector<Process> engines = null;
+	private volatile Generation current = null;		// active namespaces
+	private Vector<Generation> retired = null;		// replaced, but still in use
+	private String configFile = null;				// name of configuration file
+	private Object parseLock = new Object();		// serialize configuration reads
+	private boolean suspended = false;				// engines suspended?
 
 	//=================================================================
 	/**
@@ -97,15 +270,8 @@ public class NamespaceManager extends DefaultHandler {
 	 * namespace (empty root directory).</p>
 	 */
 	public NamespaceManager () {
-		// allocate namespace mapping.
-		userNS = new Hashtable<String,Namespace>();
-		// allocate engine list
-		engines = new Vector<Process>();
-
-		// setup empty default namespace
-		Permissions perm = new Permissions ("sys", "sys", PERM_DIR_DEFAULT);
-		Directory root = new LogicalDirectory ("", perm, "|/");
-		userNS.put ("*", new Namespace (root));
+		current = new Generation();
+		retired = new Vector<Generation>();
 	}
 	
 	//=================================================================
@@ -115,9 +281,10 @@ public class NamespaceManager extends DefaultHandler {
 	 * @param ns Namespace - namespace definition
 	 * @return boolean - successful operation?
 	 */
-	public boolean addNamespace (String user, Namespace ns) {
+	public synchronized boolean addNamespace (String user, Namespace ns) {
 		
 		// allow redefinition of default namespace
+		Hashtable<String,Namespace> userNS = current.userNS;
 		if (!user.equals ("*") && userNS.containsKey (user))
 			return false;
 		// save user-specific namespace
@@ -134,24 +301,140 @@ public class NamespaceManager extends DefaultHandler {
 	 * @return Namespace - user-specific (or default) namespace
 	 */
 	public Namespace getUserNS (String user) {
-		Namespace ns = userNS.get (user);
-		if (ns == null)
-			return userNS.get ("*");
+		return lookup (current, user);
+	}
+	
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Attach a session to a user-specific namespace. The
+	 * namespace (and the engines serving it) is kept alive
+	 * until the session detaches (when it is closed or reset),
+	 * even if the configuration is reloaded in the meantime:
+	 * a session sees the new namespace only after a reset.</p>
+	 * @param user String - name of namespace user
+	 * @return Namespace - user-specific (or default) namespace
+	 */
+	public synchronized Namespace attachNS (String user) {
+		Namespace ns = lookup (current, user);
+		if (ns != null)
+			current.users++;
 		return ns;
 	}
 	
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Detach a session from a namespace. If the namespace
+	 * belongs to a replaced configuration and this was the
+	 * last session using it, its engines are terminated.</p>
+	 * @param ns Namespace - namespace to be released
+	 */
+	public synchronized void detachNS (Namespace ns) {
+		// still current?
+		if (current.contains (ns)) {
+			current.users--;
+			return;
+		}
+		// find retired generation.
+		for (Generation gen : retired) {
+			if (gen.contains (ns)) {
+				if (--gen.users == 0) {
+					// last user gone: retire engines.
+					gen.terminate();
+					retired.remove (gen);
+				}
+				return;
+			}
+		}
+	}
+	
 	//=================================================================
 	/**
 	 * <p>Shutdown manager and terminate all running engines.</p> 
 	 */
-	public void shutdown () {
+	public synchronized void shutdown () {
 		
 		// shutdown all engines.
-		int count = engines.size();
-		for (int n = 0; n < count; n++) {
-			Process eng = engines.elementAt (n);
-			eng.terminate();
+		current.terminate();
+		for (Generation gen : retired)
+			gen.terminate();
+		retired.clear();
+	}
+	
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Suspend the engines of the active namespaces: event-driven
+	 * engines are not scheduled until they are resumed.</p> 
+	 */
+	public synchronized void suspendEngines () {
+		suspended = true;
+		current.pause();
+	}
+	
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Resume suspended engines of the active namespaces.</p> 
+	 */
+	public synchronized void resumeEngines () {
+		suspended = false;
+		current.proceed();
+	}
+	
+	//=================================================================
+	/**
+	 * <p>Lookup user-specific namespace in a generation.</p>
+	 * @param gen Generation - set of namespaces
+	 * @param user String - name of namespace user
+	 * @return Namespace - user-specific (or default) namespace
+	 */
+	private static Namespace lookup (Generation gen, String user) {
+		Namespace ns = gen.userNS.get (user);
+		if (ns == null)
+			return gen.userNS.get ("*");
+		return ns;
+	}
+	
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Replace the active namespaces with a new generation.
+	 * Engines of unchanged entries have been taken over by the new
+	 * generation; engines of entries that no longer exist are
+	 * terminated immediately; all other engines of the old generation
+	 * are terminated as soon as no session uses it anymore. New
+	 * engines are started now (suspended if the engines of the
+	 * server are suspended).</p>
+	 * @param next Generation - new set of namespaces
+	 */
+	private synchronized void activate (Generation next) {
+		Generation old = current;
+
+		// engines taken over belong to the new generation;
+		// start all other engines.
+		for (Enumeration<String> e = next.engines.keys(); e.hasMoreElements(); ) {
+			String path = e.nextElement();
+			Engine eng = next.engines.get (path);
+			if (eng.adopted)
+				old.engines.remove (path);
+			else {
+				if (suspended)
+					eng.proc.pause();
+				eng.proc.start();
+			}
+		}
+		current = next;
+
+		// stop engines of vanished entries.
+		for (Enumeration<String> e = old.engines.keys(); e.hasMoreElements(); ) {
+			String path = e.nextElement();
+			if (!next.engines.containsKey (path)) {
+				old.engines.remove (path).proc.terminate();
+				System.out.println ("   Stopped engine for '" + path + "'");
+			}
 		}
+		// retire old generation.
+		if (old.users == 0)
+			old.terminate();
+		else
+			retired.add (old);
 	}
 	
 	//#################################################################
@@ -161,30 +444,88 @@ public class NamespaceManager extends DefaultHandler {
 	/*
 	 * XML parse state attributes:
 	 */
-	private Hashtable<String,Class<?>> handlers = null;
+	private Hashtable<String,EntryFactory> handlers = null;
+	private Generation next = null;			// generation under construction
 	private String device = null;			// device (kernel only)
 	private String user = null;				// associated user
 	private Directory root = null;			// root directory
 	private Stack<Directory> tree = null;	// directory stack
+	private Namespace baseNS = null;		// base of overlay namespace
+	private Stack<Directory> baseTree = null;	// base directory stack
 	private File file = null;				// current file instance 
 	private StringBuffer pcData = null;		// PCDATA between tags
+	private boolean fromImage = false;		// reading a namespace image?
+	private byte[] imageData = null;		// file content from image
 	
 	//=================================================================
 	/**
-	 * <p>Read namespace definitions from XML configuration file.</p> 
+	 * <p>Read namespace definitions from XML configuration file.
+	 * The definitions are parsed into a new set of namespaces
+	 * that replaces the active set on success; sessions attached
+	 * to the old namespaces keep using them.</p> 
 	 * @param fname String - name of namespace definition file
 	 * @return boolean - successful operation?
 	 */
 	public boolean readConfig (String fname) {
+		synchronized (parseLock) {
+			// parse new generation of namespaces
+			next = new Generation();
+			boolean rc;
+			if (NamespaceImage.isImage (fname)) {
+				// load precompiled namespace image.
+				fromImage = true;
+				rc = loadImage (fname);
+				fromImage = false;
+			} else
+				rc = parseConfig (fname);
+			if (rc) {
+				// remember configuration and activate namespaces
+				configFile = fname;
+				activate (next);
+			} else {
+				// drop engines started (or taken over) during a failed read.
+				for (Enumeration<String> e = next.engines.keys(); e.hasMoreElements(); ) {
+					String path = e.nextElement();
+					drop (path, next.engines.get (path));
+				}
+				next.engines.clear();
+			}
+			// clean-up parse state
+			next = null;
+			handlers = null;
+			tree = null;
+			baseTree = null;
+			baseNS = null;
+			file = null;
+			pcData = null;
+			imageData = null;
+			return rc;
+		}
+	}
+	
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Re-read the namespace definitions from the last
+	 * successfully read configuration file.</p> 
+	 * @return boolean - successful operation?
+	 */
+	public boolean reload () {
+		if (configFile == null)
+			return false;
+		System.out.println ("Reloading namespace configurations from '" + configFile + "'...");
+		return readConfig (configFile);
+	}
+	
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Parse namespace definitions from XML configuration file.</p> 
+	 * @param fname String - name of namespace definition file
+	 * @return boolean - successful operation?
+	 */
+	private boolean parseConfig (String fname) {
 
 		// initialize XML state attributes
-		handlers = new Hashtable<String,Class<?>>();
-		
-		// use some predefined handlers.
-		handlers.put ("logDir",	  LogicalDirectory.class);
-		handlers.put ("logFile",  LogicalFile.class);
-		handlers.put ("diskFile", DiskFile.class);
-		handlers.put ("procFile", ProcessFile.class);
+		initHandlers();
 
 		// parse configuration file.
 		try {
@@ -202,6 +543,86 @@ public class NamespaceManager extends DefaultHandler {
 		return true;
 	}
 	
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Load namespace definitions from a precompiled namespace
+	 * image (see NamespaceImage).</p>
+	 * @param fname String - name of namespace image file
+	 * @return boolean - successful operation?
+	 */
+	private boolean loadImage (String fname) {
+
+		// initialize state attributes
+		initHandlers();
+
+		// replay image.
+		try {
+			NamespaceImage.replay (fname, this);
+		}
+		catch (Exception e) {
+			System.out.println ("ReadConfig exception: " + e.getMessage());
+			return false;
+		}
+		// report success.
+		return true;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Set the content of the current file as stored in a
+	 * namespace image (replaces PCDATA parsing).</p>
+	 * @param data byte[] - file content (or null)
+	 */
+	void setImageContent (byte[] data) {
+		imageData = data;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Setup factories for predefined entry handlers.</p>
+	 */
+	private void initHandlers () {
+		handlers = new Hashtable<String,EntryFactory>();
+		
+		// use some predefined handlers.
+		handlers.put ("logDir", new EntryFactory() {
+			public Entry newEntry() { return new LogicalDirectory(); }
+		});
+		handlers.put ("hashDir", new EntryFactory() {
+			public Entry newEntry() { return new HashedDirectory(); }
+		});
+		handlers.put ("lazyDir", new EntryFactory() {
+			public Entry newEntry() { return new LazyDirectory(); }
+		});
+		handlers.put ("diskDir", new EntryFactory() {
+			public Entry newEntry() { return new DiskDirectory(); }
+		});
+		handlers.put ("synthDir", new EntryFactory() {
+			public Entry newEntry() { return new SyntheticDirectory(); }
+		});
+		handlers.put ("logFile", new EntryFactory() {
+			public Entry newEntry() { return new LogicalFile(); }
+		});
+		handlers.put ("memFile", new EntryFactory() {
+			public Entry newEntry() { return new MemoryFile(); }
+		});
+		handlers.put ("diskFile", new EntryFactory() {
+			public Entry newEntry() { return new DiskFile(); }
+		});
+		handlers.put ("procFile", new EntryFactory() {
+			public Entry newEntry() { return new ProcessFile(); }
+		});
+		handlers.put ("watchFile", new EntryFactory() {
+			public Entry newEntry() { return new WatchFile(); }
+		});
+		handlers.put ("cacheFile", new EntryFactory() {
+			public Entry newEntry() { return new CachedFile(); }
+		});
+		handlers.put ("synthFile", new EntryFactory() {
+			public Entry newEntry() { return new SyntheticFile(); }
+		});
+	}
+	
 	//=================================================================
 	/**
 	 * <p>Start of new Element in XML.</p>
@@ -226,13 +647,16 @@ public class NamespaceManager extends DefaultHandler {
 			try {
 				// get access to handler class
 				Class<?> hdlrClass = Class.forName (hdlrClassName);
-				// store handler.
-				handlers.put (hdlrName, hdlrClass);
+				// store handler factory.
+				handlers.put (hdlrName, new ClassFactory (hdlrClass));
 				System.out.println ("Mapping '" + hdlrName + "' to class '" + hdlrClassName + "'");
 			}
 			catch (ClassNotFoundException exc) {
 				System.err.println ("Can't access class " + hdlrClassName);
 			}
+			catch (NoSuchMethodException exc) {
+				System.err.println ("No default constructor for class " + hdlrClassName);
+			}
 			return;
 		}
 		//-------------------------------------------------------------
@@ -243,9 +667,18 @@ public class NamespaceManager extends DefaultHandler {
 			user = attrs.getValue ("user");
 			// preset device 
 			device = attrs.getValue ("device");
+			// get base namespace (overlay)
+			baseNS = null;
+			String base = attrs.getValue ("base");
+			if (base != null) {
+				baseNS = next.userNS.get (base);
+				if (baseNS == null)
+					throw new SAXException ("Base namespace '" + base + "' not defined!");
+			}
 			// initialize directory references
 			root = null;
 			tree = new Stack<Directory>();
+			baseTree = new Stack<Directory>();
 			return;
 		}
 		//-------------------------------------------------------------
@@ -260,30 +693,47 @@ public class NamespaceManager extends DefaultHandler {
 			if (!isRoot)
 				parent = tree.peek();
 			
-			// instantiate a new handler
+			// initialize namespace entry
+			String label = attrs.getValue ("name");
+			if (isRoot)
+				label = "/";
+			else if (label == null)
+				throw new SAXException ("Un-named directory!");
+
+			// find corresponding directory in base namespace.
+			Directory baseDir = null;
+			if (baseNS != null) {
+				if (isRoot)
+					baseDir = baseNS.getRoot();
+				else if (baseTree.peek() != null) {
+					Entry be = baseTree.peek().getEntryByName (label);
+					if (be instanceof Directory)
+						baseDir = (Directory) be;
+				}
+			}
+			
+			// instantiate a new handler: logical directories in an
+			// overlay namespace are laid over their base directory.
 			String type = attrs.getValue ("type");
-			Directory dir = (Directory) instantiateHandler (type);
+			Directory dir = null;
+			if (baseDir != null && "logDir".equals (type))
+				dir = new OverlayDirectory();
+			else
+				dir = (Directory) instantiateHandler (type);
 			if (dir == null)
 				throw new SAXException ("Entry handler for type '" + type + "' not found or failed.");
+			if (dir instanceof OverlayDirectory)
+				((OverlayDirectory) dir).setBase (baseDir);
+			else
+				baseDir = null;
 
-			// try to run handler process in separate thread.
-			Hashtable<String,String> params = collectParams (attrs);
-			Process proc = dir.startHandler (params);
-			if (proc != null)
-				// keep in list of started threads.
-				engines.add (proc);
+			// try to start handler process (engine).
+			startEngine (dir, getPath (isRoot ? "" : label), collectParams (attrs));
 
 			// assemble permissions
 			Permissions perm = assemblePermissions (attrs, parent);
 			if (perm == null)
 				throw new SAXException ("Root directory must specify permissions!");
-			
-			// initialize namespace entry
-			String label = attrs.getValue ("name");
-			if (isRoot)
-				label = "/";
-			else if (label == null)
-				throw new SAXException ("Un-named directory!");
 			dir.init (label, perm, device);
 			
 			// handle relationship.
@@ -294,6 +744,7 @@ public class NamespaceManager extends DefaultHandler {
 
 			// save reference to current directory
 			tree.push (dir);
+			baseTree.push (baseDir);
 			return;
 		}
 		//-------------------------------------------------------------
@@ -312,29 +763,25 @@ public class NamespaceManager extends DefaultHandler {
 			if (file == null)
 				throw new SAXException ("Entry handler for type '" + type + "' not found or failed.");
 			
-			// try to run handler process in separate thread.
-			Hashtable<String,String> params = collectParams (attrs);
-			Process proc = file.startHandler (params);
-			if (proc != null)
-				// keep in list of started threads.
-				engines.add (proc);
+			// initialize namespace entry
+			String label = attrs.getValue ("name");
+			if (label == null)
+				throw new SAXException ("Un-named file!");
+
+			// try to start handler process (engine).
+			startEngine (file, getPath (label), collectParams (attrs));
 
 			// assemble permissions
 			Permissions perm = assemblePermissions (attrs, parent);
 			if (perm == null)
 				throw new SAXException ("Root directory must specify permissions!");
-			
-			// initialize namespace entry
-			String label = attrs.getValue ("name");
-			if (label == null)
-				throw new SAXException ("Un-named file!");
 			file.init (label, perm, device);
 			
 			// handle relationship.
 			parent.add (file);
 			
-			// start parsing of PCDATA for logical files
-			if (file instanceof LogicalFile) {
+			// start parsing of PCDATA for logical and memory files
+			if (file instanceof LogicalFile || file instanceof MemoryFile) {
 				pcData = new StringBuffer();
 			}
 			return;
@@ -358,8 +805,12 @@ public class NamespaceManager extends DefaultHandler {
 		//-------------------------------------------------------------
 		if (name.equals ("Namespace")) {
 			// create a new namespace from root directory
-			// and associate it with user name.
-			userNS.put (user, new Namespace (root));
+			// and associate it with user name: identifiers continue
+			// those of the replaced namespace (sessions attached to
+			// the old generation never see duplicate qids).
+			Namespace prev = (baseNS != null ? baseNS : lookup (current, user));
+			Namespace ns = (prev != null ? new Namespace (root, prev) : new Namespace (root));
+			next.userNS.put (user, ns);
 			System.out.println ("   Created namespace for user '" + user + "'");
 			return;
 		}
@@ -369,6 +820,7 @@ public class NamespaceManager extends DefaultHandler {
 		if (name.equals ("Directory")) {
 			// we are done for this directory - pop stack
 			tree.pop();
+			baseTree.pop();
 		}
 		//-------------------------------------------------------------
 		// </File>
@@ -377,12 +829,17 @@ public class NamespaceManager extends DefaultHandler {
 			// if we are a logical file definition...
 			if (file instanceof LogicalFile) {
 				// convert PCDATA to byte array.
-				byte[] content = Base64.toArray (pcData.toString());
+				byte[] content = (fromImage ? imageData : Base64.toArray (pcData.toString()));
 				// prepare the entry with provided data
 				((LogicalFile) file).setContent (content);
 				// close PCDATA buffer
 				pcData = null;
 			}
+			else if (file instanceof MemoryFile) {
+				byte[] content = (fromImage ? imageData : Base64.toArray (pcData.toString()));
+				((MemoryFile) file).setContent (content);
+				pcData = null;
+			}
 			return;
 		}
 	}
@@ -433,9 +890,75 @@ public class NamespaceManager extends DefaultHandler {
 			if (gid == null) gid = parentPerm.getGroup();
 			if (mode == 0) mode = parentPerm.getMode();
 		}
+		// names from the configuration get their own identifiers.
+		Identities.register (uid);
+		Identities.register (gid);
 		return new Permissions (uid, gid, mode);
 	}
 	//-----------------------------------------------------------------
+	/**
+	 * <p>Get the path of a new entry in the directory currently
+	 * parsed (prefixed with the namespace user). The path is used
+	 * to identify entries across configuration reloads.</p>
+	 * @param label String - name of new entry
+	 * @return String - path of entry
+	 */
+	private String getPath (String label) {
+		StringBuffer buf = new StringBuffer (String.valueOf (user));
+		buf.append (':');
+		for (int n = 1; n < tree.size(); n++)
+			buf.append ('/').append (tree.elementAt(n).getName());
+		buf.append ('/').append (label);
+		return buf.toString();
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Start the handler process (engine) of a new entry. The engine
+	 * of an unchanged entry (same path, type and parameters) in the
+	 * active configuration is taken over instead of starting a new
+	 * one. New engines are started when the namespaces are activated.</p>
+	 * @param e Entry - new entry
+	 * @param path String - path of entry (with user)
+	 * @param params Hashtable<String,String> - parameters of entry
+	 */
+	private void startEngine (Entry e, String path, Hashtable<String,String> params) {
+		Engine eng = null;
+		Engine cur = current.engines.get (path);
+		if (cur != null && cur.sameConfig (e, params) && e.adoptHandler (cur.proc, params)) {
+			// engine of unchanged entry taken over.
+			eng = new Engine (cur.proc, e, params);
+			eng.adopted = true;
+		} else {
+			Process proc = e.startHandler (params);
+			if (proc == null)
+				return;
+			// keep in list of engines (started when the
+			// namespaces are activated).
+			eng = new Engine (proc, e, params);
+		}
+		// drop the engine of an entry with the same path.
+		Engine prev = next.engines.put (path, eng);
+		if (prev != null && prev.proc != eng.proc)
+			drop (path, prev);
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Drop an engine of the generation under construction: a new
+	 * engine is terminated, an engine taken over from the active
+	 * generation is handed back to its entry.</p>
+	 * @param path String - path of entry (with user)
+	 * @param eng Engine - engine to be dropped
+	 */
+	private void drop (String path, Engine eng) {
+		if (!eng.adopted) {
+			eng.proc.terminate();
+			return;
+		}
+		Engine cur = current.engines.get (path);
+		if (cur != null && cur.proc == eng.proc)
+			cur.entry.adoptHandler (cur.proc, cur.params);
+	}
+	//-----------------------------------------------------------------
 	/**
 	 * <p>Instantiate a new entry handler of given type.</p> 
 	 * @param type String - type name
@@ -446,13 +969,13 @@ public class NamespaceManager extends DefaultHandler {
 			return null;
 		// instantiate a new handler
 		Entry hdlr = null;
-		Class<?> hdlrClass = handlers.get (type);
-		if (hdlrClass == null) {
+		EntryFactory factory = handlers.get (type);
+		if (factory == null) {
 			System.err.println ("No class found for type '" + type + "'");
 			return null;
 		}
 		try {
-			hdlr = (Entry) hdlrClass.newInstance();
+			hdlr = factory.newEntry();
 		} catch (Exception e) {
 			System.err.println (e.getMessage());
 			return null;
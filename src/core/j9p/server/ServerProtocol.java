@@ -34,8 +34,12 @@ package j9p.server;
 ///////////////////////////////////////////////////////////////////////////////
 //import external declarations.
 
+import java.io.IOException;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.Vector;
+import j9p.Channel;
+import j9p.Message;
 import j9p.auth.AuthEntry;
 import j9p.auth.Credential;
 import j9p.ns.Directory;
@@ -43,6 +47,8 @@ import j9p.ns.Namespace;
 import j9p.ns.Entry;
 import j9p.ns.Permissions;
 import j9p.ns.Entry.Handle;
+import j9p.ns.handlers.ProcessFile;
+import j9p.ns.handlers.WatchFile;
 
 
 ///////////////////////////////////////////////////////////////////////////////
@@ -128,17 +134,57 @@ public abstract class ServerProtocol extends Entry.AttributeHandler implements S
 		}
 	}
 	
+	//=================================================================
+	/**
+	 * <p>Read on a blocking process file or a watch file that is
+	 * completed when data is available: the reply is sent from the
+	 * thread that completes the read.</p>
+	 */
+	private class DeferredRead extends ProcessFile.PendingRead {
+
+		//-------------------------------------------------------------
+		/*
+		 * Attributes:
+		 */
+		int tag;		// transaction identifier
+		int fid;		// file identifier
+
+		//-------------------------------------------------------------
+		/**
+		 * <p>Complete the read: send reply (if not flushed).</p>
+		 * @param data byte[] - read data (or null)
+		 */
+		public void complete (byte[] data) {
+			synchronized (deferred) {
+				if (deferred.get (tag) != this)
+					return;
+				deferred.remove (tag);
+				// the reply is sent before a flush can complete.
+				try {
+					comm.sendMessage (assembleReadReply (tag, fid, data));
+				}
+				catch (IOException e) {
+					// session closed.
+				}
+			}
+		}
+	}
+
 	//=================================================================
 	/*
 	 * Attributes:
 	 */
 	private Hashtable<Integer,Entry> assoc = null;	// fid/Entry map
 	private Hashtable<Integer,Handle> accessors;	// list of opened files
+	private Hashtable<Integer,Directory> walked;	// directory an entry was found in
 	private NamespaceManager nsHdlr = null;			// namespace handler
 	private boolean withAuth = false;				// authentication required?
 
 	protected Namespace ns = null;					// operational namespace
+	private Vector<Namespace> attached = null;		// attached namespaces
 	protected int maxMsgSize = 8192;				// maximum size of messages 
+	private Channel comm = null;					// channel for deferred replies
+	private Hashtable<Integer,DeferredRead> deferred;	// deferred reads (by tag)
 	
 	//=================================================================
 	/**
@@ -150,6 +196,9 @@ public abstract class ServerProtocol extends Entry.AttributeHandler implements S
 	protected ServerProtocol (NamespaceManager nsHdlr, boolean needAuth) {
 		assoc = new Hashtable<Integer,Entry>();
 		accessors = new Hashtable<Integer,Handle>();
+		walked = new Hashtable<Integer,Directory>();
+		deferred = new Hashtable<Integer,DeferredRead>();
+		attached = new Vector<Namespace>();
 		this.nsHdlr = nsHdlr;
 		withAuth = needAuth;
 	}
@@ -160,6 +209,15 @@ public abstract class ServerProtocol extends Entry.AttributeHandler implements S
 	 */
 	public void reset () {
 		
+		// cancel deferred reads.
+		Vector<DeferredRead> list;
+		synchronized (deferred) {
+			list = new Vector<DeferredRead> (deferred.values());
+			deferred.clear();
+		}
+		for (DeferredRead dr : list)
+			dr.abort();
+		
 		// "clunk" all fids.
 		for (Enumeration<Integer> e = accessors.keys(); e.hasMoreElements(); ) {
 			int fid = e.nextElement();
@@ -167,10 +225,40 @@ public abstract class ServerProtocol extends Entry.AttributeHandler implements S
 			releaseFid (fid);
 		}
 		// empty lists
+		for (Entry e : assoc.values())
+			e.dropReference();
 		assoc.clear();
 		accessors.clear();
+		walked.clear();
+		
+		// detach from namespaces.
+		synchronized (attached) {
+			for (Namespace n : attached)
+				nsHdlr.detachNS (n);
+			attached.clear();
+		}
+	}
+	
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Set the channel to the client: replies of deferred operations
+	 * are sent directly on the channel.</p>
+	 * @param ch Channel - channel to client
+	 */
+	public void setChannel (Channel ch) {
+		comm = ch;
 	}
 	
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Assemble the reply for a (deferred) read operation.</p>
+	 * @param tag int - transaction identifier
+	 * @param fid int - file identifier
+	 * @param data byte[] - read data (or null)
+	 * @return Message - assembled reply message
+	 */
+	protected abstract Message assembleReadReply (int tag, int fid, byte[] data);
+	
 	//#################################################################
 	//===================>>>  SERVER OPERATIONS  <<<===================
 	//#################################################################
@@ -229,7 +317,7 @@ public abstract class ServerProtocol extends Entry.AttributeHandler implements S
 		Permissions perm = new Permissions ("auth", "auth", Permissions.PERM_666);
 		auth.init ("AUTH", perm, "  ");
 		// associate it with fid.
-		assoc.put (fid, auth);
+		associate (fid, auth);
 		
 		// set result values.
 		int rc = (auth != null ? Result.RC_OK : Result.RC_NO_AUTH_ENTRY);
@@ -283,14 +371,16 @@ public abstract class ServerProtocol extends Entry.AttributeHandler implements S
 		}
 		
 		// get associated namespace
-		ns = nsHdlr.getUserNS (uid);
+		ns = nsHdlr.attachNS (uid);
 		if (ns == null)
 			return new Result (Result.RC_NO_NAMESPACE_AVAIL, null);
+		attached.add (ns);
 		
 		// get root directory of attached (mounted) namespace...
 		Directory root = ns.getRoot();
 		// ... and remember association with fid.
-		assoc.put (fid, root);
+		associate (fid, root);
+		walked.remove (fid);
 		// return root directory.
 		return new Result (Result.RC_OK, root);
 	}
@@ -311,7 +401,8 @@ public abstract class ServerProtocol extends Entry.AttributeHandler implements S
 			return new Result (Result.RC_NO_ENTRY, null);
 
 		// associate with new fid
-		assoc.put  (newFid, e);
+		associate (newFid, e);
+		setWalked (newFid, walked.get (fid));
 		return new Result (Result.RC_OK, e);
 	}
 	//-----------------------------------------------------------------
@@ -338,10 +429,12 @@ public abstract class ServerProtocol extends Entry.AttributeHandler implements S
 		int count = names.length;
 		Entry[] list = new Entry [count];
 		int pos = 0;
+		Directory from = walked.get (fid);
 		for (int n = 0; n < count; n++) {
 			// go down the directories...
 			if (e instanceof Directory) {
 				Directory dir = (Directory) e;
+				from = dir;
 				e = list[pos++] = dir.getEntryByName (names[n]);
 				if (e == null) {
 					pos--;
@@ -359,7 +452,8 @@ public abstract class ServerProtocol extends Entry.AttributeHandler implements S
 			if (newFid != NOFID)
 				fid = newFid;
 			// we have a new association for fid.
-			assoc.put  (fid, e);
+			associate (fid, e);
+			setWalked (fid, from);
 		} else {
 			// truncate result list
 			Entry[] trunc = new Entry [pos];
@@ -377,14 +471,39 @@ public abstract class ServerProtocol extends Entry.AttributeHandler implements S
 	/**
 	 * <p<Remove the association between an entry in the namespace of
 	 * the server and a fid.</p>
+	 * <p>Buffered data is written when the handle is released; a
+	 * failed write is reported as error (the fid is clunked anyway).</p>
 	 * @param fid int - file identifier (entry in namespace)
+	 * @return String - error message (or null if successful)
 	 */
-	protected void clunk (int fid) {
+	protected String clunk (int fid) {
 		// release fid
 		releaseFid (fid);
+		String err = takeError (fid);
 		// remove association and handle
-		assoc.remove (fid);
+		dissociate (fid);
 		accessors.remove (fid);
+		walked.remove (fid);
+		return err;
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get (and reset) an I/O error of the handle associated
+	 * with fid that has not been reported yet. Errors of delayed
+	 * operations (like buffered writes) are reported on the next
+	 * read, write, sync or clunk on the fid.</p>
+	 * @param fid int - file identifier (entry in namespace)
+	 * @return String - error message (or null if no error is pending)
+	 */
+	protected String takeError (int fid) {
+		Handle hdl = accessors.get (fid);
+		if (hdl == null)
+			return null;
+		IOException e = hdl.error;
+		if (e == null)
+			return null;
+		hdl.error = null;
+		return "I/O error: " + e.getMessage();
 	}
 	//-----------------------------------------------------------------
 	/**
@@ -421,6 +540,25 @@ public abstract class ServerProtocol extends Entry.AttributeHandler implements S
 		return 0;
 	}
 	//-----------------------------------------------------------------
+	/**
+	 * <p>Commit written data of the file associated with fid
+	 * to stable storage.</p>
+	 * @param fid int - file identifier (entry in namespace)
+	 * @return int - return code of operation (0=OK)
+	 */
+	protected int sync (int fid) {
+		// get entry associated with fid
+		Entry e = assoc.get (fid);
+		if (e == null)
+			return -1;
+		// only opened files have written data.
+		Handle hdl = accessors.get (fid);
+		if (hdl != null && !e.sync (hdl))
+			return -3;
+		// report success.
+		return 0;
+	}
+	//-----------------------------------------------------------------
 	/**
 	 * <p>Check permissions and open file associated with fid, server
 	 * returns its unique identifier for the file, the QID.</p>
@@ -484,16 +622,20 @@ public abstract class ServerProtocol extends Entry.AttributeHandler implements S
 		if (e == null || !(e instanceof Directory))
 			return new Result (Result.RC_NO_PARENT_DIRECTORY, e);
 		Directory dir = (Directory) e;
+		// shared directories of another namespace are read-only.
+		if (isShared (dir))
+			return new Result (Result.RC_CREATE_FAILED, null);
 
 		// allocate new entry
 		e = dir.create ((mode & 0x80) != 0, name, perm, cr);
 		if (e == null)
 			return new Result (Result.RC_CREATE_FAILED, null);
-		// set new qidPath
-		e.setId (ns.getNextId());
+		// new entry has been registered with the namespace
+		// of the parent directory (unique qidPath assigned).
 
 		// associate new entry with fid.
-		assoc.put  (fid, e);
+		associate (fid, e);
+		walked.put (fid, dir);
 		
 		// open new file
 		Handle hdl = e.open (cr, mode);
@@ -532,6 +674,39 @@ public abstract class ServerProtocol extends Entry.AttributeHandler implements S
 		return e.read (hdl, offset, count, this);
 	}
 	//-----------------------------------------------------------------
+	/**
+	 * <p>Start a read on a blocking process file or a watch file: the
+	 * read is completed (and the reply sent) when data is available
+	 * or the deadline has passed; the calling thread doesn't wait.</p>
+	 * @param tag int - transaction identifier
+	 * @param fid int - file identifier (entry in namespace)
+	 * @param offset long - offset into content
+	 * @param count int - number of bytes to read
+	 * @return boolean - read deferred (no reply now)?
+	 */
+	protected boolean readDeferred (int tag, int fid, long offset, int count) {
+		// only for blocking process files and watch files.
+		Entry e = assoc.get (fid);
+		Handle hdl = accessors.get (fid);
+		if (comm == null || hdl == null)
+			return false;
+		boolean blocking = (e instanceof WatchFile);
+		if (e instanceof ProcessFile)
+			blocking = ((ProcessFile) e).isBlocking();
+		if (!blocking)
+			return false;
+		// register read (can complete immediately).
+		DeferredRead dr = new DeferredRead();
+		dr.tag = tag;
+		dr.fid = fid;
+		deferred.put (tag, dr);
+		if (e instanceof WatchFile)
+			((WatchFile) e).read (hdl, offset, count, dr);
+		else
+			((ProcessFile) e).read (hdl, offset, count, dr);
+		return true;
+	}
+	//-----------------------------------------------------------------
 	/**
 	 * <p>Write COUNT bytes to file associated with fid at offset OFFSET,
 	 * server returns number of bytes successfully written.</p>
@@ -550,22 +725,40 @@ public abstract class ServerProtocol extends Entry.AttributeHandler implements S
 		Handle hdl = accessors.get (fid);
 		if (hdl == null && !(e instanceof AuthEntry))
 			return 0;
-		// write data to entry and return number of bytes written.
-		return e.write (hdl, data, offset, count);
+		// write data to entry.
+		int num = e.write (hdl, data, offset, count);
+		// a successful write changes the entry (new version)
+		if (num > 0)
+			e.setModified();
+		// return number of bytes written.
+		return num;
 	}
 	//-----------------------------------------------------------------
 	/**
-	 * <p>Remove file associated with fid.</p> 
+	 * <p>Remove file associated with fid (the fid is clunked even if
+	 * the remove fails). The entry is removed from the directory it
+	 * was found in; entries and directories shared from another
+	 * namespace (overlays) can't be removed.</p> 
 	 * @param fid int - file identifier (entry in namespace)
+	 * @return boolean - entry removed?
 	 */
-	protected void remove (int fid) {
+	protected boolean remove (int fid) {
 		// get associated entry
 		Entry e = assoc.get (fid);
+		Directory dir = walked.get (fid);
 		// drop associations
-		assoc.remove(fid);
+		releaseFid (fid);
+		dissociate (fid);
 		accessors.remove (fid);
+		walked.remove (fid);
+		if (e == null)
+			return false;
 		// unlink from namespace
-		e.remove();
+		if (dir != null && !isShared (dir))
+			return dir.unlink (e);
+		if (isShared (e.getParent()))
+			return false;
+		return e.remove();
 	}
 	//-----------------------------------------------------------------
 	/**
@@ -573,9 +766,64 @@ public abstract class ServerProtocol extends Entry.AttributeHandler implements S
 	 * @param oldTag int - tag of pending operation
 	 */
 	protected void flush (int oldTag) {
+		// cancel deferred read.
+		DeferredRead dr;
+		synchronized (deferred) {
+			dr = deferred.remove (oldTag);
+		}
+		if (dr != null)
+			dr.abort();
 	}
 	
 	//=================================================================
+	/**
+	 * <p>Remember the directory the entry of a fid was found in.</p>
+	 * @param fid int - file identifier
+	 * @param dir Directory - directory of entry (or null)
+	 */
+	private void setWalked (int fid, Directory dir) {
+		if (dir != null)
+			walked.put (fid, dir);
+		else
+			walked.remove (fid);
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Check if a directory is shared from a namespace the session
+	 * is not attached to (base of an overlay namespace).</p>
+	 * @param dir Directory - directory to be checked
+	 * @return boolean - directory shared from another namespace?
+	 */
+	private boolean isShared (Directory dir) {
+		if (dir == null)
+			return false;
+		Namespace owner = dir.getNamespace();
+		return owner != null && !attached.contains (owner);
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Associate a fid with an entry (the entry keeps track of
+	 * referencing fids).</p>
+	 * @param fid int - file identifier
+	 * @param e Entry - associated entry
+	 */
+	private void associate (int fid, Entry e) {
+		e.addReference();
+		Entry old = assoc.put (fid, e);
+		if (old != null)
+			old.dropReference();
+	}
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Drop the association of a fid with an entry.</p>
+	 * @param fid int - file identifier
+	 */
+	private void dissociate (int fid) {
+		Entry old = assoc.remove (fid);
+		if (old != null)
+			old.dropReference();
+	}
+	//-----------------------------------------------------------------
 	/**
 	 * <p>Release a fid (and all associated references).
 	 * Does not remove the fid from lists!!</p> 
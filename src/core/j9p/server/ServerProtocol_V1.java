@@ -196,7 +196,9 @@ public class ServerProtocol_V1 extends ServerProtocol {
 			case V1.Tclunk: {
 				int fid  = in.getShort();
 				// perform operation
-				clunk (fid);
+				String err = clunk (fid);
+				if (err != null)
+					return assembleError (tag, err);
 				// assemble response
 				reply = assembleFid (V1.Rclunk, tag, fid);
 			} break;
@@ -286,8 +288,14 @@ public class ServerProtocol_V1 extends ServerProtocol {
 				int fid  = in.getShort();
 				long offset = in.getLong();
 				int count = in.getShort();
+				// blocking reads are answered later.
+				if (readDeferred (tag, fid, offset, count))
+					break;
 				// perform operation.
 				byte[] data = read (fid, offset, count);
+				String err = takeError (fid);
+				if (err != null)
+					return assembleError (tag, err);
 				int size = (data != null ? data.length : 0);
 				// assemble response
 				reply = assembleRead (tag, fid, size, data);
@@ -309,6 +317,9 @@ public class ServerProtocol_V1 extends ServerProtocol {
 				byte[] data = in.getArray (size);
 				// perform operation
 				int count = write (fid, offset, size, data);
+				String err = takeError (fid);
+				if (err != null)
+					return assembleError (tag, err);
 				// assemble response
 				reply = assembleCount(V1.Rwrite, tag, fid, count);
 			} break;
@@ -319,9 +330,11 @@ public class ServerProtocol_V1 extends ServerProtocol {
 			case V1.Tremove: {
 				int fid  = in.getShort();
 				// perform operation
-				remove (fid);
-				// assemble response
-				reply = assembleTag (V1.Rremove, tag);
+				if (remove (fid))
+					// assemble response
+					reply = assembleTag (V1.Rremove, tag);
+				else
+					reply = assembleError (tag, "can't remove file");
 			} break;
 
 			//---------------------------------------------------------
@@ -375,7 +388,7 @@ public class ServerProtocol_V1 extends ServerProtocol {
 		stat.putString (attr.perm.getOwner(),  28);
 		stat.putString (attr.perm.getGroup(),  28);
 		stat.putInt    ((int)attr.qidPath);
-		stat.putInt    (attr.mtime);
+		stat.putInt    (attr.version);
 		stat.putInt    (attr.flags | attr.perm.getMode());
 		stat.putInt    (attr.atime);
 		stat.putInt    (attr.mtime);
@@ -401,6 +414,7 @@ public class ServerProtocol_V1 extends ServerProtocol {
 		// fixed values.
 		Attributes newAttr = new Attributes();
 		newAttr.qidPath = oldAttr.qidPath;
+		newAttr.flags = oldAttr.flags;
 		newAttr.device = oldAttr.device;
 		
 		// decode file attributes
@@ -436,7 +450,7 @@ public class ServerProtocol_V1 extends ServerProtocol {
 		Blob b = new Blob();
 		Attributes attr = getAttributes(e);
 		b.putInt ((int)attr.qidPath);
-		b.putInt (attr.mtime);
+		b.putInt (attr.version);
 		return b.asByteArray (false);
 	}
 
@@ -519,6 +533,17 @@ public class ServerProtocol_V1 extends ServerProtocol {
 		return msg;
 	}
 	//-----------------------------------------------------------------
+	/**
+	 * <p>Assemble the reply for a (deferred) read operation.</p>
+	 * @param tag int - transaction identifier
+	 * @param fid int - file identifier
+	 * @param data byte[] - read data (or null)
+	 * @return Message - assembled reply message
+	 */
+	protected Message assembleReadReply (int tag, int fid, byte[] data) {
+		return assembleRead (tag, fid, (data != null ? data.length : 0), data);
+	}
+	//-----------------------------------------------------------------
 	/**
 	 * <p>Assemble Styx server response - Read.</p>
 	 * @param tag int - transaction identifier
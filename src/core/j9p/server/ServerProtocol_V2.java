@@ -206,6 +206,12 @@ public class ServerProtocol_V2 extends ServerProtocol {
 			// Interrupt pending operation with message tag OLDTAG.
 			//---------------------------------------------------------
 			case V2.Tflush: {
+				// get tag of operation to terminate
+				int oldTag = in.getShort();
+				// perform operation
+				flush (oldTag);
+				// assemble response
+				reply = assembleTag (V2.Rflush, tag);
 			} break;
 
 			//---------------------------------------------------------
@@ -292,8 +298,14 @@ public class ServerProtocol_V2 extends ServerProtocol {
 				long offset = in.getLong();
 				int count = in.getInt();
 				
+				// blocking reads are answered later.
+				if (readDeferred (tag, fid, offset, count))
+					break;
 				// perform operation.
 				byte[] data = read (fid, offset, count);
+				String err = takeError (fid);
+				if (err != null)
+					return assembleError (tag, err);
 				int size = (data != null ? data.length : 0);
 				// assemble response
 				reply = assembleRead (tag, size, data);
@@ -314,6 +326,9 @@ public class ServerProtocol_V2 extends ServerProtocol {
 				
 				// perform operation
 				int count = write (fid, offset, size, data);
+				String err = takeError (fid);
+				if (err != null)
+					return assembleError (tag, err);
 				// assemble response
 				reply = assembleWrite (tag, count);
 			} break;
@@ -325,7 +340,9 @@ public class ServerProtocol_V2 extends ServerProtocol {
 			case V2.Tclunk: {
 				// perform operation
 				int fid  = in.getInt();
-				clunk (fid);
+				String err = clunk (fid);
+				if (err != null)
+					return assembleError (tag, err);
 				// assemble response
 				reply = assembleTag (V2.Rclunk, tag);
 			} break;
@@ -336,9 +353,11 @@ public class ServerProtocol_V2 extends ServerProtocol {
 			case V2.Tremove: {
 				// perform operation
 				int fid  = in.getInt();
-				remove (fid);
-				// assemble response
-				reply = assembleTag (V2.Rremove, tag);
+				if (remove (fid))
+					// assemble response
+					reply = assembleTag (V2.Rremove, tag);
+				else
+					reply = assembleError (tag, "can't remove file");
 			} break;
 
 			//---------------------------------------------------------
@@ -359,6 +378,23 @@ public class ServerProtocol_V2 extends ServerProtocol {
 			// Set file attributes.
 			//---------------------------------------------------------
 			case V2.Twstat: {
+				// read stat data
+				int fid  = in.getInt();
+				int size = in.getShort();
+				byte[] statData = in.getArray (size);
+				// a stat with "don't touch" values only requests
+				// to commit the file content to stable storage.
+				int rc = (isSyncRequest (statData) ? sync (fid) : wstat (fid, statData, cr));
+				if (rc == -1)
+					return assembleError (tag, "no such file");
+				else if (rc == -2)
+					return assembleError (tag, "attributes not changed");
+				else if (rc == -3) {
+					String err = takeError (fid);
+					return assembleError (tag, err != null ? err : "sync failed");
+				}
+				// assemble response
+				reply = assembleTag (V2.Rwstat, tag);
 			} break;
 			
 			//---------------------------------------------------------
@@ -397,8 +433,8 @@ public class ServerProtocol_V2 extends ServerProtocol {
 		b.putShort		(attr.device.charAt(0));
 		b.putInt		(attr.device.charAt(1));
 		b.putByte		(attr.flags >> 24);
-		b.putInt		(attr.mtime);
-		b.putLong		(attr.qidPath & 0xFFFFFFFFL);
+		b.putInt		(attr.version);
+		b.putLong		(attr.qidPath);
 		b.putInt		(attr.perm.getMode() | attr.flags);
 		b.putInt		(attr.atime);
 		b.putInt		(attr.mtime);
@@ -422,6 +458,26 @@ public class ServerProtocol_V2 extends ServerProtocol {
 		return false;
 	}
 	//-----------------------------------------------------------------
+	/**
+	 * <p>Check if attributes of a "wstat" request have "don't touch"
+	 * values only (all numeric fields ~0, all strings empty).</p>
+	 * @param stat byte[] - file attributes
+	 * @return boolean - "sync" request?
+	 */
+	private static boolean isSyncRequest (byte[] stat) {
+		// size[2] type[2] dev[4] qid[13] mode[4] atime[4] mtime[4]
+		// length[8] name[s] uid[s] gid[s] muid[s]
+		if (stat == null || stat.length != 49)
+			return false;
+		for (int n = 2; n < 41; n++)
+			if (stat[n] != (byte) 0xFF)
+				return false;
+		for (int n = 41; n < 49; n++)
+			if (stat[n] != 0)
+				return false;
+		return true;
+	}
+	//-----------------------------------------------------------------
 	/**
 	 * <p>Get unique identifier of entry.</p>
 	 * @param e Entry - namespace entry
@@ -432,7 +488,7 @@ public class ServerProtocol_V2 extends ServerProtocol {
 		if (e != null) {
 			Attributes attr = getAttributes(e);
 			b.putByte (attr.flags >> 24);
-			b.putInt  (attr.mtime);
+			b.putInt  (attr.version);
 			b.putLong (attr.qidPath);
 		} else {
 			// empty qid
@@ -583,6 +639,17 @@ public class ServerProtocol_V2 extends ServerProtocol {
 		return msg;
 	}
 	//-----------------------------------------------------------------
+	/**
+	 * <p>Assemble the reply for a (deferred) read operation.</p>
+	 * @param tag int - transaction identifier
+	 * @param fid int - file identifier
+	 * @param data byte[] - read data (or null)
+	 * @return Message - assembled reply message
+	 */
+	protected Message assembleReadReply (int tag, int fid, byte[] data) {
+		return assembleRead (tag, (data != null ? data.length : 0), data);
+	}
+	//-----------------------------------------------------------------
 	/**
 	 * <p>Assemble server response - Read.</p>
 	 * @param tag int - transaction identifier
@@ -146,6 +146,10 @@ public class ServerSession extends Session {
 				delegate = new ServerProtocol_V1 (nsMgr, useAuth);
 			}
 			
+			// replies of deferred operations are sent directly.
+			if (delegate instanceof ServerProtocol)
+				((ServerProtocol) delegate).setChannel (comm);
+			
 			// handle messages until the session is closed.
 			active = true;
 			while (active) {
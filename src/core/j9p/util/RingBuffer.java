@@ -0,0 +1,234 @@
+
+//******************************************************************
+//*   PGMID.        BOUNDED BYTE RING BUFFER.                      *
+//*   AUTHOR.       BERND R. FIX   >Y<                             *
+//*   DATE WRITTEN. 26/10/18.                                      *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.      *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE    *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.       *
+//******************************************************************
+//*                                                                *
+//*  StyxLib: Java-based Styx server framework                     *
+//*                                                                *
+//*  Copyright (C) 2009-2012, Bernd R. Fix                         *
+//*                                                                *
+//*  This program is free software; you can redistribute it and/or *
+//*  modify it under the terms of the GNU Lesser General Public    *
+//*  License (LGPL) as published by the Free Software Foundation;  *
+//*  either version 3 of the License, or (at your option) any      *
+//*  later version.                                                *
+//*                                                                *
+//*  This program is distributed in the hope that it will be use-  *
+//*  ful, but WITHOUT ANY WARRANTY; without even the implied       *
+//*  warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR       *
+//*  PURPOSE. See the GNU General Public License for more details. *
+//*                                                                *
+//*  You should have received a copy of the GNU General Public     *
+//*  Licenses along with this program; if not, see                 *
+//*  <http://www.gnu.org/licenses/>.                               *
+//*                                                                *
+//******************************************************************
+
+package j9p.util;
+
+///////////////////////////////////////////////////////////////////////////////
+/**
+ * <p>A bounded byte queue (ring buffer) for one reader and one writer
+ * thread: data is copied into and out of the buffer without moving
+ * the remaining content, so the cost of an operation only depends on
+ * the number of bytes moved. Concurrent readers (or writers) are
+ * serialized.</p>
+ * <p>Reads can wait for data (with an optional timeout); the behavior
+ * of a write to a full buffer is defined by the overflow policy:
+ * wait for space, drop the data that doesn't fit or reject the write.</p>
+ *
+ * @author  Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+
+public class RingBuffer {
+
+	//=================================================================
+	/*
+	 * Overflow policies:
+	 */
+	public static final int OVERFLOW_BLOCK	= 0;	// wait for free space
+	public static final int OVERFLOW_DROP	= 1;	// drop excess data
+	public static final int OVERFLOW_ERROR	= 2;	// reject write
+
+	//=================================================================
+	/*
+	 * Attributes:
+	 */
+	private byte[]			buffer;						// buffer content
+	private int				policy;						// overflow policy
+	private volatile long	head = 0;					// total bytes read
+	private volatile long	tail = 0;					// total bytes written
+	private volatile int	waiting = 0;				// number of waiting threads
+	private Object			readLock = new Object();	// serialize readers
+	private Object			writeLock = new Object();	// serialize writers
+	private Object			signal = new Object();		// wait for data/space
+
+	//=================================================================
+	/**
+	 * <p>Instantiate a new ring buffer.</p>
+	 * @param capacity int - size of buffer
+	 * @param policy int - overflow policy (OVERFLOW_???)
+	 */
+	public RingBuffer (int capacity, int policy) {
+		buffer = new byte [Math.max (1, capacity)];
+		this.policy = policy;
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get overflow policy from its name ("block", "drop" or
+	 * "error").</p>
+	 * @param name String - name of policy (or null)
+	 * @param def int - default policy
+	 * @return int - overflow policy
+	 */
+	public static int getPolicy (String name, int def) {
+		if ("block".equals (name))
+			return OVERFLOW_BLOCK;
+		if ("drop".equals (name))
+			return OVERFLOW_DROP;
+		if ("error".equals (name))
+			return OVERFLOW_ERROR;
+		return def;
+	}
+
+	//=================================================================
+	/**
+	 * <p>Get number of bytes available for reading.</p>
+	 * @return int - number of buffered bytes
+	 */
+	public int available () {
+		return (int) (tail - head);
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get number of bytes that can be written without overflow.</p>
+	 * @return int - free space in buffer
+	 */
+	public int space () {
+		return buffer.length - (int) (tail - head);
+	}
+
+	//=================================================================
+	/**
+	 * <p>Write data to the buffer. If the buffer is full, the overflow
+	 * policy decides what happens: the writer waits for free space
+	 * (until all data is written or the thread is interrupted), the
+	 * excess data is dropped or the whole write is rejected.</p>
+	 * @param data byte[] - data to be written
+	 * @param ofs int - offset into data
+	 * @param len int - number of bytes
+	 * @return int - number of bytes written (-1 if rejected)
+	 */
+	public int write (byte[] data, int ofs, int len) {
+		synchronized (writeLock) {
+			if (policy == OVERFLOW_ERROR && len > space())
+				return -1;
+			int done = 0;
+			while (done < len) {
+				int num = Math.min (len - done, space());
+				if (num == 0) {
+					if (policy != OVERFLOW_BLOCK || !await (true, -1))
+						break;
+					continue;
+				}
+				// copy data (in two parts if wrapping around).
+				int pos = (int) (tail % buffer.length);
+				int first = Math.min (num, buffer.length - pos);
+				System.arraycopy (data, ofs + done, buffer, pos, first);
+				if (first < num)
+					System.arraycopy (data, ofs + done + first, buffer, 0, num - first);
+				done += num;
+				// publish data.
+				tail = tail + num;
+				wakeup();
+			}
+			return done;
+		}
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Read data from the buffer.</p>
+	 * @param max int - max. number of bytes to be read
+	 * @param timeout long - max. time to wait for data (in
+	 * milliseconds; 0 = don't wait, &lt;0 = wait until data is
+	 * available or the thread is interrupted)
+	 * @return byte[] - read data (or null if no data is available)
+	 */
+	public byte[] read (int max, long timeout) {
+		synchronized (readLock) {
+			if (max <= 0 || (available() == 0 && !await (false, timeout)))
+				return null;
+			int num = Math.min (max, available());
+			byte[] res = new byte [num];
+			// copy data (in two parts if wrapping around).
+			int pos = (int) (head % buffer.length);
+			int first = Math.min (num, buffer.length - pos);
+			System.arraycopy (buffer, pos, res, 0, first);
+			if (first < num)
+				System.arraycopy (buffer, 0, res, first, num - first);
+			// release space.
+			head = head + num;
+			wakeup();
+			return res;
+		}
+	}
+
+	//=================================================================
+	/**
+	 * <p>Wait for data or free space.</p>
+	 * @param forSpace boolean - wait for free space (or data)?
+	 * @param timeout long - max. time to wait (0 = don't wait,
+	 * &lt;0 = no timeout)
+	 * @return boolean - condition met?
+	 */
+	private boolean await (boolean forSpace, long timeout) {
+		long deadline = System.currentTimeMillis() + timeout;
+		synchronized (signal) {
+			// announce waiting thread before the condition is checked,
+			// so the other side can't miss us.
+			waiting++;
+			try {
+				while (forSpace ? space() == 0 : available() == 0) {
+					if (timeout == 0)
+						return false;
+					if (timeout < 0)
+						signal.wait();
+					else {
+						long rest = deadline - System.currentTimeMillis();
+						if (rest <= 0)
+							return false;
+						signal.wait (rest);
+					}
+				}
+				return true;
+			}
+			catch (InterruptedException e) {
+				return false;
+			}
+			finally {
+				waiting--;
+			}
+		}
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Wake up waiting threads (if any).</p>
+	 */
+	private void wakeup () {
+		if (waiting > 0) {
+			synchronized (signal) {
+				signal.notifyAll();
+			}
+		}
+	}
+}
@@ -1,15 +1,18 @@
 
 package j9p.example;
 
-import j9p.ns.handlers.ProcessFile;
+import j9p.ns.handlers.ScheduledEngine;
 
 
-public class Counter implements ProcessFile.Listener {
+public class Counter extends ScheduledEngine {
 
-	private long counter = 0;
+	private volatile long counter = 0;
 	
-	public void asInput(byte[] data, long offset) {
-		counter += data.length;
+	// count written bytes (called on the shared engine scheduler).
+	protected void process () {
+		byte[] data;
+		while ((data = read (4096, false)) != null)
+			counter += data.length;
 	}
 
 	public byte[] getOutput(long offset, int count) {
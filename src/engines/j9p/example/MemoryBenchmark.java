@@ -0,0 +1,134 @@
+
+//******************************************************************
+//*   PGMID.        NAMESPACE MEMORY BENCHMARK.                    *
+//*   AUTHOR.       BERND R. FIX   >Y<                             *
+//*   DATE WRITTEN. 26/10/18.                                      *
+//*   COPYRIGHT.    (C) BY BERND R. FIX. ALL RIGHTS RESERVED.      *
+//*                 LICENSED MATERIAL - PROGRAM PROPERTY OF THE    *
+//*                 AUTHOR. REFER TO COPYRIGHT INSTRUCTIONS.       *
+//******************************************************************
+//*                                                                *
+//*  StyxLib: Java-based Styx server framework                     *
+//*                                                                *
+//*  Copyright (C) 2009-2012, Bernd R. Fix                         *
+//*                                                                *
+//*  This program is free software; you can redistribute it and/or *
+//*  modify it under the terms of the GNU Lesser General Public    *
+//*  License (LGPL) as published by the Free Software Foundation;  *
+//*  either version 3 of the License, or (at your option) any      *
+//*  later version.                                                *
+//*                                                                *
+//*  This program is distributed in the hope that it will be use-  *
+//*  ful, but WITHOUT ANY WARRANTY; without even the implied       *
+//*  warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR       *
+//*  PURPOSE. See the GNU General Public License for more details. *
+//*                                                                *
+//*  You should have received a copy of the GNU General Public     *
+//*  Licenses along with this program; if not, see                 *
+//*  <http://www.gnu.org/licenses/>.                               *
+//*                                                                *
+//******************************************************************
+
+package j9p.example;
+
+///////////////////////////////////////////////////////////////////////////////
+//import external declarations.
+
+import j9p.ns.Entry;
+import j9p.ns.Permissions;
+import j9p.ns.handlers.LogicalDirectory;
+import j9p.ns.handlers.LogicalFile;
+
+
+///////////////////////////////////////////////////////////////////////////////
+/**
+ * <p>The <b>MemoryBenchmark</b> measures the heap footprint of namespace
+ * entries: it builds a namespace tree with a given number of entries
+ * (logical directories with logical files) and reports the number of
+ * heap bytes used per entry.</p>
+ * <p>Usage: <tt>java j9p.example.MemoryBenchmark [&lt;entries&gt; [&lt;fanout&gt;]]</tt>
+ * (defaults: 1000000 entries, 1000 entries per directory).</p>
+ * <p>Run the benchmark with a fixed heap size (-Xms = -Xmx) to get
+ * stable results.</p>
+ *
+ * @author Bernd R. Fix   >Y<
+ * @version 1.0
+ */
+public class MemoryBenchmark {
+
+	//=================================================================
+	/**
+	 * <p>Build a namespace tree and report its heap footprint.</p>
+	 * @param argv String[] - command line arguments
+	 */
+	public static void main (String[] argv) {
+
+		// get parameters
+		int entries = 1000000;
+		int fanout = 1000;
+		try {
+			if (argv.length > 0)
+				entries = Integer.parseInt (argv[0]);
+			if (argv.length > 1)
+				fanout = Math.max (1, Integer.parseInt (argv[1]));
+		} catch (NumberFormatException e) {
+			System.err.println ("Usage: MemoryBenchmark [<entries> [<fanout>]]");
+			return;
+		}
+
+		// measure heap before tree is built
+		long before = usedHeap();
+		long start = System.currentTimeMillis();
+
+		// build tree: entries are created with their own permission
+		// objects and strings (as the configuration parser does).
+		LogicalDirectory root = new LogicalDirectory ("/",
+			new Permissions ("sys", "sys", Permissions.PERM_755), null);
+		LogicalDirectory dir = null;
+		int count = 1;
+		for (int n = 1; count < entries; n++) {
+			if (dir == null || dir.numEntries() == fanout) {
+				dir = new LogicalDirectory (new String ("dir" + n),
+					new Permissions (new String ("sys"), new String ("sys"), Permissions.PERM_755),
+					new String ("#y"));
+				root.add (dir);
+			} else {
+				Entry e = new LogicalFile (new String ("file" + n),
+					new Permissions (new String ("glenda"), new String ("users"), Permissions.PERM_644),
+					new String ("#y"));
+				dir.add (e);
+			}
+			count++;
+		}
+		long elapsed = System.currentTimeMillis() - start;
+
+		// measure heap after tree is built (the tree is still in use
+		// afterwards, so it is not collected before it is measured).
+		long after = usedHeap();
+		long used = after - before;
+		System.out.println ("Entries:         " + count);
+		System.out.println ("Build time:      " + elapsed + " ms");
+		System.out.println ("Heap used:       " + (used / 1024) + " kB");
+		System.out.println ("Bytes per entry: " + (used / count));
+		System.out.println ("Directories:     " + root.numEntries());
+	}
+
+	//-----------------------------------------------------------------
+	/**
+	 * <p>Get (settled) size of used heap.</p>
+	 * @return long - used heap in bytes
+	 */
+	private static long usedHeap () {
+		Runtime rt = Runtime.getRuntime();
+		long used = Long.MAX_VALUE;
+		for (int n = 0; n < 5; n++) {
+			System.gc();
+			try {
+				Thread.sleep (100);
+			} catch (InterruptedException e) {
+			}
+			used = Math.min (used, rt.totalMemory() - rt.freeMemory());
+		}
+		return used;
+	}
+}
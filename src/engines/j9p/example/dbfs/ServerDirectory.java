@@ -38,6 +38,8 @@ import java.util.Vector;
 import j9p.ns.File;
 import j9p.ns.Directory;
 import j9p.ns.Permissions;
+import j9p.ns.handlers.CachedFile;
+import j9p.ns.handlers.LazyDirectory;
 import j9p.ns.handlers.LogicalDirectory;
 import j9p.ns.handlers.Process;
 
@@ -109,26 +111,49 @@ public class ServerDirectory extends LogicalDirectory {
 		}
 		
 		// populate dbfs root directory
-		// 1.) Status file
-		add (new ServerStatus ("status", P644, db));
+		// 1.) Status file (status is cached)
+		ServerStatus status = new ServerStatus ("status", P644, db);
+		add (new CachedFile ("status", P644, "db", status, ServerStatus.UPD_PERIOD));
 		
-		// 2.) databases directory
-		Directory dbs = new LogicalDirectory ("databases", P755, "db");
+		// 2.) databases directory: database instances are
+		// enumerated when the directory is accessed first.
+		String idle = p.get ("idle");
+		int idleTime = (idle != null ? Integer.parseInt (idle) : 0);
+		Directory dbs = new LazyDirectory ("databases", P755, "db", new DatabaseLoader(), idleTime);
 		add (dbs);
 		
-		// populate databases directory
-		Vector<String> instances = db.enumDatabases();
-		for (String name : instances) {
-			
-			// create new logical directory.
-			Directory base = new LogicalDirectory (name, P444, "db");
-			dbs.add (base);
-			
-			// populate database instance directory.
-			File clone = new DatabaseSession ("session", P666, db, name);
-			base.add (clone);
-		}
 		// no concurrent process spawned
 		return null;
 	}
+	
+	//=================================================================
+	/**
+	 * <p>Loader for the databases directory.</p>
+	 */
+	private class DatabaseLoader implements LazyDirectory.Loader {
+		
+		//-------------------------------------------------------------
+		/**
+		 * <p>Populate databases directory.</p>
+		 * @param dir LazyDirectory - databases directory
+		 * @param p Hashtable<String,String> - parameter set
+		 */
+		public void load (LazyDirectory dir, Hashtable<String,String> p) {
+			if (db == null)
+				return;
+			Vector<String> instances = db.enumDatabases();
+			if (instances == null)
+				return;
+			for (String name : instances) {
+				
+				// create new logical directory.
+				Directory base = new LogicalDirectory (name, P444, "db");
+				dir.add (base);
+				
+				// populate database instance directory.
+				File clone = new DatabaseSession ("session", P666, db, name);
+				base.add (clone);
+			}
+		}
+	}
 }
@@ -40,6 +40,9 @@ import j9p.ns.Permissions;
 ///////////////////////////////////////////////////////////////////////////////
 /**
  * <p>Read-only file that contains the database server status information.</p>
+ * <p>Every read queries the database engine; the file is published
+ * wrapped in a <i>CachedFile</i> that keeps the status for at most
+ * UPD_PERIOD milliseconds.</p>
  * 
  * @author Bernd R. Fix   >Y<
  * @version 1.0
@@ -50,15 +53,13 @@ public class ServerStatus extends File {
 	/*
 	 * Constants:
 	 */
-	private static final int UPD_PERIOD = 60;	// update every 60 sec
+	public static final long UPD_PERIOD = 60000;	// update every 60 sec
 	
 	//=================================================================
 	/*
 	 * Attributes:
 	 */
 	private DatabaseEngine	db = null;			// reference to engine
-	private String			statusMsg = "";		// last status info
-	private long			lastCheck = 0;		// time of last check
 	
 	//=================================================================
 	/**
@@ -85,10 +86,7 @@ public class ServerStatus extends File {
 	public byte[] read (Handle hdl, long offset, int count, AttributeHandler fmt) {
 		
 		// get current status message
-		updateStatus();
-		
-		// check bounds.
-		byte[] data = statusMsg.getBytes();
+		byte[] data = getStatus().getBytes();
 		int size = data.length;
 		if (offset < 0 || offset > size-1)
 			return null;
@@ -122,25 +120,17 @@ public class ServerStatus extends File {
 	 */
 	public long getSize () {
 		
-		// get current status message
-		updateStatus();
-		
-		// return our size
-		return statusMsg.length();
+		// return size of current status message
+		return getStatus().getBytes().length;
 	}
 	
 	//=================================================================
 	/**
-	 * <p>Update expired status information.</p> 
+	 * <p>Get current status information.</p> 
+	 * @return String - status message
 	 */
-	private void updateStatus () {
-		
-		// check time since last update
-		long now = System.currentTimeMillis() / 1000;
-		if ((now - lastCheck) > UPD_PERIOD) {
-			// get an updated status
-			statusMsg = db.getStatus();
-			lastCheck = now;
-		}
+	private String getStatus () {
+		String msg = (db == null ? null : db.getStatus());
+		return (msg == null ? "" : msg);
 	}
 }